@@ -0,0 +1,40 @@
+package com.pax.market.android.app.sdk.benchmark;
+
+import com.pax.market.api.sdk.java.base.util.CryptoUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decryption of an encrypted cloud message.
+ * <p>
+ * StoreSdk.aesDecrypt only checks the SDK is initialized and calls CryptoUtils.aesDecrypt with the
+ * app secret, so CryptoUtils is measured directly instead of initializing StoreSdk off device.
+ */
+@State(Scope.Benchmark)
+public class AesDecryptBenchmark {
+    private static final String APP_SECRET = "NZXUMUQ3GMDWQVIYHE2AJR3ZZH1JJX5SGQ8ALYKY";
+
+    @Param({"64", "1024", "16384"})
+    private int size;
+
+    private String encrypted;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            builder.append("{\"nick\":\"Mario\",\"age\":28}");
+        }
+        builder.setLength(size);
+        encrypted = CryptoUtils.aesEncrypt(builder.toString(), APP_SECRET);
+    }
+
+    @Benchmark
+    public String aesDecrypt() {
+        return CryptoUtils.aesDecrypt(encrypted, APP_SECRET);
+    }
+}
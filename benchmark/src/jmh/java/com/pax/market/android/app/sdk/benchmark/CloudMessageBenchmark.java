@@ -0,0 +1,36 @@
+package com.pax.market.android.app.sdk.benchmark;
+
+import com.pax.market.android.app.sdk.CloudMessage;
+import com.pax.market.android.app.sdk.NotificationMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of a cloud message as done by CloudMessageService for every push.
+ */
+@State(Scope.Benchmark)
+public class CloudMessageBenchmark {
+    private static final String NOTIFICATION_MESSAGE = "{\"notification\":{\"title\":\"Portugal vs. Denmark\","
+            + "\"content\":\"great match!\"},\"data\":{\"nick\":\"Mario\",\"room\":\"PortugalVSDenmark\",\"age\":28}}";
+    private static final String MEDIA_MESSAGE = "{\"media\":{\"template\":1,\"imgUrl\":\"https://static.whatspos.com/ad/1.png\","
+            + "\"linkUrl\":\"https://www.whatspos.com\",\"showSkipButton\":true,\"countDownTime\":5,\"linkText\":\"Open\","
+            + "\"linkTextColor\":\"#FFFFFF\",\"linkTextBgColor\":\"#3366FF\",\"skipButtonText\":\"Skip\",\"showLink\":true,"
+            + "\"title\":\"Summer sale\",\"titleColor\":\"#000000\",\"priority\":2}}";
+
+    @Benchmark
+    public CloudMessage fromJsonNotification() {
+        return CloudMessage.fromJson(NOTIFICATION_MESSAGE);
+    }
+
+    @Benchmark
+    public CloudMessage fromJsonMedia() {
+        return CloudMessage.fromJson(MEDIA_MESSAGE);
+    }
+
+    @Benchmark
+    public NotificationMessage fromJsonAndNotification() {
+        return CloudMessage.fromJson(NOTIFICATION_MESSAGE).getNotification();
+    }
+}
@@ -0,0 +1,77 @@
+package com.pax.market.android.app.sdk.benchmark;
+
+import com.google.gson.Gson;
+import com.pax.market.android.app.sdk.dto.DcUrlInfo;
+import com.pax.market.android.app.sdk.dto.MediaMesageInfo;
+import com.pax.market.android.app.sdk.util.SdkJson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Gson round trips of the objects the SDK keeps in SharedPreferences.
+ * <p>
+ * The perCall benchmarks build a Gson on every call the way PreferencesUtils.putObject and
+ * getObject used to, the shared ones reuse one reflective instance, and the sdkJson ones use
+ * SdkJson with its streaming adapters as the SDK does now.
+ */
+@State(Scope.Benchmark)
+public class GsonRoundTripBenchmark {
+    private final Gson gson = new Gson();
+    private DcUrlInfo dcUrlInfo;
+    private MediaMesageInfo mediaMesageInfo;
+
+    @Setup
+    public void setUp() {
+        dcUrlInfo = new DcUrlInfo();
+        dcUrlInfo.setDcUrl("https://api.whatspos.com/p-market-api");
+        dcUrlInfo.setStaticUrl("https://static.whatspos.com");
+        dcUrlInfo.setBusinessCode(0);
+        dcUrlInfo.setLastAccessTime(System.currentTimeMillis());
+
+        mediaMesageInfo = new MediaMesageInfo();
+        mediaMesageInfo.setTemplate(1);
+        mediaMesageInfo.setImgUrl("https://static.whatspos.com/ad/1.png");
+        mediaMesageInfo.setSavedPath("/data/data/com.pax.demo/files/ad/1.png");
+        mediaMesageInfo.setLinkUrl("https://www.whatspos.com");
+        mediaMesageInfo.setLinkText("Open");
+        mediaMesageInfo.setShowLink(true);
+        mediaMesageInfo.setShowSkipButton(true);
+        mediaMesageInfo.setCountDownTime(5);
+        mediaMesageInfo.setTitle("Summer sale");
+    }
+
+    @Benchmark
+    public DcUrlInfo dcUrlInfoPerCall() {
+        String json = new Gson().toJson(dcUrlInfo);
+        return new Gson().fromJson(json, DcUrlInfo.class);
+    }
+
+    @Benchmark
+    public DcUrlInfo dcUrlInfoShared() {
+        return gson.fromJson(gson.toJson(dcUrlInfo), DcUrlInfo.class);
+    }
+
+    @Benchmark
+    public DcUrlInfo dcUrlInfoSdkJson() {
+        return SdkJson.fromJson(SdkJson.toJson(dcUrlInfo), DcUrlInfo.class);
+    }
+
+    @Benchmark
+    public MediaMesageInfo mediaMesageInfoPerCall() {
+        String json = new Gson().toJson(mediaMesageInfo);
+        return new Gson().fromJson(json, MediaMesageInfo.class);
+    }
+
+    @Benchmark
+    public MediaMesageInfo mediaMesageInfoShared() {
+        return gson.fromJson(gson.toJson(mediaMesageInfo), MediaMesageInfo.class);
+    }
+
+    @Benchmark
+    public MediaMesageInfo mediaMesageInfoSdkJson() {
+        return SdkJson.fromJson(SdkJson.toJson(mediaMesageInfo), MediaMesageInfo.class);
+    }
+}
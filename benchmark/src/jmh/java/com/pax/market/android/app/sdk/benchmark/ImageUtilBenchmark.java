@@ -0,0 +1,34 @@
+package com.pax.market.android.app.sdk.benchmark;
+
+import com.pax.market.android.app.sdk.util.ImageUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+/**
+ * Reading a downloaded image into memory, the allocation rate shows the copies made on the way.
+ */
+@State(Scope.Benchmark)
+public class ImageUtilBenchmark {
+    @Param({"16384", "262144", "2097152"})
+    private int size;
+
+    private byte[] image;
+
+    @Setup
+    public void setUp() {
+        image = new byte[size];
+        new Random(42).nextBytes(image);
+    }
+
+    @Benchmark
+    public byte[] readStream() throws Exception {
+        return ImageUtil.readStream(new ByteArrayInputStream(image));
+    }
+}
@@ -0,0 +1,43 @@
+package com.pax.market.android.app.sdk.benchmark;
+
+import com.pax.market.android.app.sdk.util.SdkLog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * A debug log below the level, written the former way with a concatenated message and with SdkLog
+ * placeholders. Read the gc.alloc.rate.norm column for the bytes allocated per call.
+ */
+@State(Scope.Benchmark)
+public class SdkLogBenchmark {
+    private static final String TAG = "MediaFetcher";
+
+    // not constants, so the JIT can not fold the messages
+    private String url = "https://static.whatspos.com/media/2f9c1d7e/banner.png";
+    private int attempt = 2;
+    private IOException error = new IOException("Connection reset");
+
+    @Benchmark
+    public void concatenated() {
+        SdkLog.d(TAG, "Fetch media failed, attempt " + attempt + ", e:" + error);
+    }
+
+    @Benchmark
+    public void placeholders() {
+        SdkLog.d(TAG, "Fetch media failed, attempt {}, e:{}", attempt, error);
+    }
+
+    @Benchmark
+    public void concatenatedString() {
+        SdkLog.d(TAG, "Illegal media url: " + url);
+    }
+
+    @Benchmark
+    public void placeholderString() {
+        SdkLog.d(TAG, "Illegal media url: {}", url);
+    }
+}
@@ -0,0 +1,45 @@
+package com.pax.market.android.app.sdk.benchmark;
+
+import com.pax.market.android.app.sdk.util.StringUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * StringUtils functions called on every proxy comparison and url handling.
+ */
+@State(Scope.Benchmark)
+public class StringUtilsBenchmark {
+    // not constants, so the JIT can not fold the calls
+    private String blank = "   \t  ";
+    private String host = "proxy.whatspos.com";
+    private String sameHost = new String("proxy.whatspos.com");
+    private String url = "https://api.whatspos.com/p-market-api/v1/3rdApps/param";
+    private String padded = "  terminal-1234  ";
+
+    @Benchmark
+    public boolean isBlank() {
+        return StringUtils.isBlank(blank);
+    }
+
+    @Benchmark
+    public boolean equals() {
+        return StringUtils.equals(host, sameHost);
+    }
+
+    @Benchmark
+    public String trim() {
+        return StringUtils.trim(padded);
+    }
+
+    @Benchmark
+    public String substringAfter() {
+        return StringUtils.substringAfter(url, "://");
+    }
+
+    @Benchmark
+    public String replace() {
+        return StringUtils.replace(url, "p-market-api", "p-market-api-dc");
+    }
+}
@@ -30,20 +30,11 @@
 -keep class com.google.gson.** { *; }
 -keep class com.google.gson.examples.android.model.** { *; }
 
-#JJWT
--keepnames class com.fasterxml.jackson.databind.** { *; }
--dontwarn com.fasterxml.jackson.databind.*
+#BouncyCastle
 -keepattributes InnerClasses
 -keep class org.bouncycastle.** { *; }
 -keepnames class org.bouncycastle.** { *; }
 -dontwarn org.bouncycastle.**
--keep class io.jsonwebtoken.** { *; }
--keepnames class io.jsonwebtoken.* { *; }
--keepnames interface io.jsonwebtoken.* { *; }
--dontwarn javax.xml.bind.DatatypeConverter
--dontwarn io.jsonwebtoken.impl.Base64Codec
--keepnames class com.fasterxml.jackson.** { *; }
--keepnames interface com.fasterxml.jackson.** { *; }
 
 #dom4j
 -dontwarn org.dom4j.**
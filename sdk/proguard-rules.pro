@@ -22,21 +22,14 @@
 -keep class com.google.gson.** { *; }
 -keep class com.google.gson.examples.android.model.** { *; }
 
-#JJWT
--keepnames class com.fasterxml.jackson.databind.** { *; }
--dontwarn com.fasterxml.jackson.databind.*
+#BouncyCastle
 -keepattributes InnerClasses
 
 -keep class org.bouncycastle.** { *; }
 -keepnames class org.bouncycastle.** { *; }
 -dontwarn org.bouncycastle.**
 
--keep class io.jsonwebtoken.** { *; }
--keepnames class io.jsonwebtoken.* { *; }
--keepnames interface io.jsonwebtoken.* { *; }
-
--dontwarn javax.xml.bind.DatatypeConverter
--dontwarn io.jsonwebtoken.impl.Base64Codec
-
--keepnames class com.fasterxml.jackson.** { *; }
--keepnames interface com.fasterxml.jackson.** { *; }
\ No newline at end of file
+#SdkLog, strip verbose logs
+-assumenosideeffects class com.pax.market.android.app.sdk.util.SdkLog {
+    public static void v(...);
+}
@@ -10,7 +10,7 @@ import android.graphics.Color;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.CountDownTimer;
-import android.util.Log;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -23,9 +23,9 @@ import android.widget.Toast;
 
 import com.pax.market.android.app.sdk.dto.MediaMesageInfo;
 import com.pax.market.android.app.sdk.util.ImageUtil;
-import com.pax.market.android.app.sdk.util.PreferencesUtils;
+import com.pax.market.android.app.sdk.util.SdkLog;
 
-import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AdvertisementDialog extends Dialog {
     
@@ -44,6 +44,15 @@ public class AdvertisementDialog extends Dialog {
     private static final int DEFAULT_COUNT_DOWN = 5;
     private static final int DEFAULT_COLOR = 255;
     private static AdvertisementDialog instance;
+    /**
+     * Content warmed up by {@link #preload(Context)}, consumed by the next {@link #show}.
+     * Only the message and the decoded picture are kept, never views of an activity.
+     */
+    private static volatile Prepared prepared;
+    /**
+     * Bumped by {@link #clearPrepared()}, a preload started before is not published
+     */
+    private static final AtomicInteger preparedGeneration = new AtomicInteger();
 
     View layout;
     /**
@@ -65,6 +74,8 @@ public class AdvertisementDialog extends Dialog {
     private String titleColor;
     private OnLinkClick listener;
     private boolean openLink;
+    private MediaMesageInfo mediaMesageInfo;
+    private Prepared preparedContent;
 
 
     private ImageView mImg;
@@ -89,6 +100,8 @@ public class AdvertisementDialog extends Dialog {
         this.title = builder.title;
         this.titleColor = builder.titleColor;
         this.openLink = builder.openLink;
+        this.mediaMesageInfo = builder.mediaMesageInfo;
+        this.preparedContent = builder.preparedContent;
 
         init();
     }
@@ -112,17 +125,50 @@ public class AdvertisementDialog extends Dialog {
 
     }
     public static MediaMesageInfo getMediaMesage(Context context) {
-        return PreferencesUtils.getObject(context, PushConstants.MEDIA_MESSAGE, MediaMesageInfo.class);
+        return MediaPlaylist.getInstance(context).getCurrent();
     }
 
-    public void init() {
+    /**
+     * Warm up the next {@link #show}: the media message is read and its picture is decoded
+     * in background. The dialog layout is inflated when it is shown, by the activity showing it.
+     * Call it from main thread, e.g. after the first frame of your activity is drawn.
+     *
+     * @param context the activity which will show the dialog
+     */
+    public static void preload(Context context) {
+        if (context == null) {
+            throw new NullPointerException("Activity can not be NULL!!");
+        }
+        new PreloadTask(context).execute();
+    }
 
-        //设置window背景，默认的背景会有Padding值，不能全屏。当然不一定要是透明，你可以设置其他背景，替换默认的背景即可。
+    /**
+     * Drop the warmed up content, since it does not match the stored media message any more.
+     */
+    static synchronized void clearPrepared() {
+        preparedGeneration.incrementAndGet();
+        prepared = null;
+    }
+
+    private static View inflateLayout(Context context, int template) {
         LayoutInflater inflater = (LayoutInflater) context
                 .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        if (template == PushConstants.MEDIA_TYPE_FULL) {
+            return inflater.inflate(R.layout.dialog_advertisement_full, null);
+        } else if (template == PushConstants.MEDIA_TYPE_MID) {
+            return inflater.inflate(R.layout.dialog_advertisement_mid, null);
+        } else if (template == PushConstants.MEDIA_TYPE_TITLE) {
+            return inflater.inflate(R.layout.dialog_advertisement_title, null);
+        }
+        return null;
+    }
+
+    public void init() {
+
+        //设置window背景，默认的背景会有Padding值，不能全屏。当然不一定要是透明，你可以设置其他背景，替换默认的背景即可。
+        layout = inflateLayout(context, template);
         // instantiate the dialog with the custom Theme
         if (template == PushConstants.MEDIA_TYPE_FULL) {
-            layout = inflater.inflate(R.layout.dialog_advertisement_full, null);
             if (showSkipButton) {
                 TextView tvSkip = layout.findViewById(R.id.tv_count_down);
                 if (skipButtonText != null) {
@@ -136,7 +182,6 @@ public class AdvertisementDialog extends Dialog {
             }
             mTvCountDown = (TextView) layout.findViewById(R.id.tv_count_down);
         } else if (template == PushConstants.MEDIA_TYPE_MID) {
-            layout = inflater.inflate(R.layout.dialog_advertisement_mid, null);
             layout.findViewById(R.id.img_close).setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
@@ -144,7 +189,6 @@ public class AdvertisementDialog extends Dialog {
                 }
             });
         } else if (template == PushConstants.MEDIA_TYPE_TITLE) {
-            layout = inflater.inflate(R.layout.dialog_advertisement_title, null);
             mtvTitle = layout.findViewById(R.id.tv_title);
             mtvTitle.setText(title);
             mtvTitle.setTextColor(getParseColor(titleColor));
@@ -187,7 +231,7 @@ public class AdvertisementDialog extends Dialog {
                 try {
                     parseColor = Color.parseColor(linkTextColor);
                 } catch (IllegalArgumentException e) {
-                    Log.e(TAG, "e:" + e);
+                    SdkLog.e(TAG, "Illegal link text color: {}", linkTextColor);
                 }
                 ((TextView) layout.findViewById(R.id.tv_show_more)).setTextColor(parseColor);
             }
@@ -195,27 +239,29 @@ public class AdvertisementDialog extends Dialog {
             mLvMore.setVisibility(View.GONE);
         }
 
-        MediaMesageInfo mediaMesageInfo = PreferencesUtils.getObject(context, PushConstants.MEDIA_MESSAGE, MediaMesageInfo.class);
-        if (mediaMesageInfo.getSavedPath() != null) {
-            Bitmap bitmapFromFile = ImageUtil.getBitmapFromFile(context.getFilesDir() + CommonConstants.MEDIA_PATH, context);
-            if (bitmapFromFile == null) { // If local does not exist, load from url
-                ImageLoadTask imageLoadTask = new ImageLoadTask();
-                imageLoadTask.execute(imgUrl);
-            } else {
-                mImg.setImageBitmap(bitmapFromFile);
-                if (template == PushConstants.MEDIA_TYPE_FULL) {
-                    startTimeout(skipButtonText);
-                }
-            }
+        Bitmap preparedBitmap = preparedContent != null ? preparedContent.bitmap : null;
+        if (preparedBitmap != null) {
+            showImage(preparedBitmap);
+        } else if (mediaMesageInfo != null && mediaMesageInfo.getSavedPath() != null) {
+            // Decode the local picture off main thread, load from url if it does not exist
+            new ImageDecodeTask().execute(mediaMesageInfo.getSavedPath());
         } else {
             ImageLoadTask imageLoadTask = new ImageLoadTask();
             imageLoadTask.execute(imgUrl);
         }
+        preparedContent = null;
 
 
         setContentView(layout);
     }
 
+    private void showImage(Bitmap bitmap) {
+        mImg.setImageBitmap(bitmap);
+        if (template == PushConstants.MEDIA_TYPE_FULL) {
+            startTimeout(skipButtonText);
+        }
+    }
+
     private void openLink() {
         if (linkUrl == null) {
             Toast.makeText(context, "Link url is null", Toast.LENGTH_LONG).show();
@@ -227,7 +273,7 @@ public class AdvertisementDialog extends Dialog {
             ((Activity) context).startActivityForResult(it, 11);
         } catch (ActivityNotFoundException e) {
             Toast.makeText(context, "Error: there is no browser found to open this link.", Toast.LENGTH_LONG).show();
-            Log.e(TAG, "e:" + e);
+            SdkLog.e(TAG, "No browser to open {}", linkUrl);
         }
     }
 
@@ -238,7 +284,7 @@ public class AdvertisementDialog extends Dialog {
             try {
                 parseColor = Color.parseColor(colorStr);
             } catch (IllegalArgumentException e) {
-                Log.e(TAG, "e:" + e);
+                SdkLog.e(TAG, "Illegal color: {}", colorStr);
             }
         }
         return parseColor;
@@ -255,7 +301,7 @@ public class AdvertisementDialog extends Dialog {
 
             @Override
             public void onFinish() {
-                Log.d("AdvertisementFull", "onFinish");
+                SdkLog.d("AdvertisementFull", "onFinish");
                 dismiss();
             }
         };
@@ -284,6 +330,8 @@ public class AdvertisementDialog extends Dialog {
         private String title;
         private String titleColor;
         private boolean openLink = true;
+        private MediaMesageInfo mediaMesageInfo;
+        private Prepared preparedContent;
 
         public Builder openLink(boolean openLink) {
             this.openLink = openLink;
@@ -387,18 +435,29 @@ public class AdvertisementDialog extends Dialog {
 
         public int showDialog(OnLinkClick listener) {
             if (instance != null && instance.isShowing()) {
-                Log.w(TAG, "Dialog is showing!");
+                SdkLog.w(TAG, "Dialog is showing!");
                 return ERR_DIALOG_SHOWING; // 有正在显示的dialog
             }
             if (this.context == null) {
                 throw new NullPointerException("Activity can not be NULL!!");
             }
+            Prepared warm;
+            synchronized (AdvertisementDialog.class) {
+                warm = prepared;
+                prepared = null;
+            }
             MediaMesageInfo mediaMesageInfo = getMediaMesageInfo();
+            if (warm != null && warm.mediaMesageInfo != mediaMesageInfo) {
+                // Ended or replaced since it was preloaded
+                warm = null;
+            }
             if (mediaMesageInfo == null) {
                 return ERR_NO_DATA; // 没有sp值
             }
 
             setBuilder(mediaMesageInfo, listener);
+            this.mediaMesageInfo = mediaMesageInfo;
+            this.preparedContent = warm;
 
             AdvertisementDialog advertisementDialog = new AdvertisementDialog(this, context);
             advertisementDialog.setCancelable(false);
@@ -439,34 +498,98 @@ public class AdvertisementDialog extends Dialog {
         }
 
         private MediaMesageInfo getMediaMesageInfo() {
-            return PreferencesUtils.getObject(context, PushConstants.MEDIA_MESSAGE, MediaMesageInfo.class);
+            return MediaPlaylist.getInstance(context).getCurrent();
         }
     }
 
 
+    private static class Prepared {
+        private final MediaMesageInfo mediaMesageInfo;
+        private final Bitmap bitmap;
+
+        Prepared(MediaMesageInfo mediaMesageInfo, Bitmap bitmap) {
+            this.mediaMesageInfo = mediaMesageInfo;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private static class PreloadTask extends AsyncTask<Void, Void, Prepared> {
+        private final Context appContext;
+        private final int generation;
+
+        PreloadTask(Context context) {
+            this.appContext = context.getApplicationContext();
+            this.generation = preparedGeneration.get();
+        }
+
+        @Override
+        protected Prepared doInBackground(Void... voids) {
+            MediaPlaylist playlist = MediaPlaylist.getInstance(appContext);
+            playlist.load();
+            MediaMesageInfo mediaMesageInfo = playlist.getCurrent();
+            if (mediaMesageInfo == null) {
+                return null;
+            }
+            Bitmap bitmap = null;
+            if (mediaMesageInfo.getSavedPath() != null) {
+                DisplayMetrics metrics = appContext.getResources().getDisplayMetrics();
+                bitmap = ImageUtil.getFitSampleBitmap(mediaMesageInfo.getSavedPath(), metrics.widthPixels, metrics.heightPixels);
+            }
+            return new Prepared(mediaMesageInfo, bitmap);
+        }
+
+        @Override
+        protected void onPostExecute(Prepared result) {
+            if (result == null) {
+                return;
+            }
+            synchronized (AdvertisementDialog.class) {
+                // The stored media message has changed while decoding
+                if (generation == preparedGeneration.get()) {
+                    prepared = result;
+                }
+            }
+        }
+    }
+
+    private class ImageDecodeTask extends AsyncTask<String, Void, Bitmap> {
+
+        @Override
+        protected Bitmap doInBackground(String... params) {
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            return ImageUtil.getFitSampleBitmap(params[0], metrics.widthPixels, metrics.heightPixels);
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap bitmap) {
+            if (bitmap == null) { // If local does not exist, load from url
+                ImageLoadTask imageLoadTask = new ImageLoadTask();
+                imageLoadTask.execute(imgUrl);
+            } else {
+                showImage(bitmap);
+            }
+        }
+    }
+
     private class ImageLoadTask extends AsyncTask<String, Integer, Bitmap> {
         //执行后台任务前做一些UI操作
 
         //执行后台任务（耗时操作）,不可在此方法内修改UI
         @Override
         protected Bitmap doInBackground(String... params) {
-            try {
-                Bitmap bitmapFromUrl = ImageUtil.getBitmapFromUrl(params[0]);
-                if (bitmapFromUrl != null) {
-                    //更新SP，更新为本地的图片地址
-                    String savePath = context.getFilesDir() + CommonConstants.MEDIA_PATH;
-                    boolean saveResult = ImageUtil.saveImage(bitmapFromUrl, savePath);
-                    if (saveResult) {
-                        MediaMesageInfo mediaMesageInfo = PreferencesUtils.getObject(context, PushConstants.MEDIA_MESSAGE, MediaMesageInfo.class);
-                        mediaMesageInfo.setSavedPath(savePath);
-                        PreferencesUtils.putObject(context, PushConstants.MEDIA_MESSAGE, mediaMesageInfo);
-                    }
-                }
-                return bitmapFromUrl;
-            } catch (IOException e) {
-                e.printStackTrace();
+            String imgUrl = params[0];
+            String savePath = MediaPlaylist.cacheMedia(context, imgUrl);
+            if (savePath == null) {
+                return null;
+            }
+            // The raw file on disk is only decoded for display
+            DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+            Bitmap bitmap = ImageUtil.getFitSampleBitmap(savePath, metrics.widthPixels, metrics.heightPixels);
+            if (bitmap != null) {
+                //更新SP，更新为本地的图片地址
+                MediaPlaylist.getInstance(context).setSavedPath(imgUrl, savePath);
             }
-            return null;
+            return bitmap;
         }
 
 
@@ -476,7 +599,7 @@ public class AdvertisementDialog extends Dialog {
             if (bitmap != null) {
                 mImg.setImageBitmap(bitmap);
             } else {
-                Log.e("ImageLoadTask", "Get null picture");
+                SdkLog.e("ImageLoadTask", "Get null picture");
             }
             if (template == PushConstants.MEDIA_TYPE_FULL) {
                 startTimeout(skipButtonText);
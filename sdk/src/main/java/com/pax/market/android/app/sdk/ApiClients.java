@@ -0,0 +1,259 @@
+package com.pax.market.android.app.sdk;
+
+import android.content.Context;
+
+import com.pax.market.android.app.sdk.util.ActivateApiStrategy;
+import com.pax.market.android.app.sdk.util.SdkTracer;
+import com.pax.market.api.sdk.java.api.check.CheckServiceApi;
+import com.pax.market.api.sdk.java.api.sync.GoInsightApi;
+import com.pax.market.api.sdk.java.api.sync.SyncApi;
+import com.pax.market.api.sdk.java.api.sync.SyncMsgTagApi;
+import com.pax.market.api.sdk.java.api.update.UpdateApi;
+import com.pax.market.api.sdk.java.base.client.ProxyDelegate;
+
+import java.util.TimeZone;
+
+/**
+ * Snapshot of the API objects of {@link StoreSdk}, all pointing to the same base url.
+ * <p>
+ * The API objects are created on first use, so init only pays for the ones the app calls, and are
+ * never changed afterwards, a new snapshot is built when the DC url changes. The proxy needs no
+ * rebuild, the {@link ProxyDelegate} reads the latest PAXSTORE proxy on every request.
+ * <p>
+ * A resolved url is used for an hour, the same period PAXSTORE DC url is cached for. Once
+ * refreshTime passes the url is refreshed in background while it is still in use, and a failed
+ * refresh extends it with backoff.
+ */
+final class ApiClients {
+    /**
+     * First retry delay of a failed background refresh, doubled on every failure
+     */
+    private static final long REFRESH_BACKOFF = 30_000L;
+    private static final long MAX_REFRESH_BACKOFF = 15 * 60_000L;
+
+    final String baseUrl;
+    /**
+     * When the base url was resolved from PAXSTORE, 0 if not resolved yet
+     */
+    final long resolvedTime;
+    /**
+     * From when the base url should be refreshed in background
+     */
+    final long refreshTime;
+    /**
+     * Until when the base url is used without asking PAXSTORE
+     */
+    final long expireTime;
+    /**
+     * Background refreshes failed in a row
+     */
+    private final int failedRefreshes;
+
+    private final Lazy<ParamApiStrategy> paramApi;
+    private final Lazy<SyncApi> syncApi;
+    private final Lazy<GoInsightApi> goInsightApi;
+    private final Lazy<SyncMsgTagApi> syncMsgTagApi;
+    private final Lazy<UpdateApi> updateApi;
+    private final Lazy<CheckServiceApi> checkServiceApi;
+    private final Lazy<ActivateApiStrategy> activateApi;
+
+    private final Context context;
+    private final String appKey;
+    private final String appSecret;
+    private final String terminalSerialNo;
+    private final String model;
+    private final ProxyDelegate proxyDelegate;
+
+    ApiClients(Context context, String baseUrl, String appKey, String appSecret, String terminalSerialNo,
+               String model, ProxyDelegate proxyDelegate) {
+        this(context, baseUrl, 0L, 0L, appKey, appSecret, terminalSerialNo, model, proxyDelegate);
+    }
+
+    private ApiClients(final Context context, final String baseUrl, long resolvedTime, long refreshTime,
+                       final String appKey, final String appSecret, final String terminalSerialNo, final String model,
+                       final ProxyDelegate proxyDelegate) {
+        this.context = context;
+        this.baseUrl = baseUrl;
+        this.resolvedTime = resolvedTime;
+        this.refreshTime = refreshTime;
+        this.expireTime = resolvedTime > 0 ? resolvedTime + CommonConstants.ONE_HOUR_INTERVAL : 0L;
+        this.failedRefreshes = 0;
+        this.appKey = appKey;
+        this.appSecret = appSecret;
+        this.terminalSerialNo = terminalSerialNo;
+        this.model = model;
+        this.proxyDelegate = proxyDelegate;
+        paramApi = new Lazy<ParamApiStrategy>() {
+            @Override
+            ParamApiStrategy create() {
+                return new ParamApiStrategy(context, baseUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
+            }
+        };
+        syncApi = new Lazy<SyncApi>() {
+            @Override
+            SyncApi create() {
+                return new SyncApi(baseUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
+            }
+        };
+        updateApi = new Lazy<UpdateApi>() {
+            @Override
+            UpdateApi create() {
+                return new UpdateApi(baseUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
+            }
+        };
+        checkServiceApi = new Lazy<CheckServiceApi>() {
+            @Override
+            CheckServiceApi create() {
+                return new CheckServiceApi(baseUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
+            }
+        };
+        goInsightApi = new Lazy<GoInsightApi>() {
+            @Override
+            GoInsightApi create() {
+                return new GoInsightApi(baseUrl, appKey, appSecret, terminalSerialNo, TimeZone.getDefault()).setProxyDelegate(proxyDelegate);
+            }
+        };
+        activateApi = new Lazy<ActivateApiStrategy>() {
+            @Override
+            ActivateApiStrategy create() {
+                return new ActivateApiStrategy(context, baseUrl, appKey, appSecret, terminalSerialNo, model == null ? "" : model).setProxyDelegate(proxyDelegate);
+            }
+        };
+        syncMsgTagApi = new Lazy<SyncMsgTagApi>() {
+            @Override
+            SyncMsgTagApi create() {
+                return new SyncMsgTagApi(baseUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
+            }
+        };
+    }
+
+    /**
+     * Same API objects with new times, the ones not created yet are created once for both snapshots
+     */
+    private ApiClients(ApiClients source, long resolvedTime, long refreshTime, long expireTime, int failedRefreshes) {
+        this.context = source.context;
+        this.baseUrl = source.baseUrl;
+        this.resolvedTime = resolvedTime;
+        this.refreshTime = refreshTime;
+        this.expireTime = expireTime;
+        this.failedRefreshes = failedRefreshes;
+        this.appKey = source.appKey;
+        this.appSecret = source.appSecret;
+        this.terminalSerialNo = source.terminalSerialNo;
+        this.model = source.model;
+        this.proxyDelegate = source.proxyDelegate;
+        paramApi = source.paramApi;
+        syncApi = source.syncApi;
+        updateApi = source.updateApi;
+        checkServiceApi = source.checkServiceApi;
+        goInsightApi = source.goInsightApi;
+        activateApi = source.activateApi;
+        syncMsgTagApi = source.syncMsgTagApi;
+    }
+
+    /**
+     * @param now
+     * @return true if the base url can be used without asking PAXSTORE
+     */
+    boolean isFresh(long now) {
+        return now < expireTime;
+    }
+
+    /**
+     * @param now
+     * @return true if the base url is still fresh but due for a background refresh
+     */
+    boolean needsRefresh(long now) {
+        return isFresh(now) && now >= refreshTime;
+    }
+
+    /**
+     * @param dcUrl        url resolved from PAXSTORE
+     * @param resolvedTime when PAXSTORE gave the url, earlier than now if the cached url is used
+     * @param refreshAhead fraction of the hour after which the url is refreshed in background
+     * @return snapshot pointing to dcUrl, the API objects are reused if the url is not changed
+     */
+    ApiClients resolved(String dcUrl, long resolvedTime, float refreshAhead) {
+        long refreshTime = resolvedTime + (long) (CommonConstants.ONE_HOUR_INTERVAL * refreshAhead);
+        if (dcUrl.equals(baseUrl)) {
+            return new ApiClients(this, resolvedTime, refreshTime, resolvedTime + CommonConstants.ONE_HOUR_INTERVAL, 0);
+        }
+        return new ApiClients(context, dcUrl, resolvedTime, refreshTime, appKey, appSecret, terminalSerialNo, model, proxyDelegate);
+    }
+
+    /**
+     * @param now
+     * @return snapshot kept in use after a failed refresh, the next refresh is tried after the backoff
+     */
+    ApiClients extended(long now) {
+        int failures = failedRefreshes + 1;
+        long backoff = Math.min(MAX_REFRESH_BACKOFF, REFRESH_BACKOFF << Math.min(failures - 1, 5));
+        // stays fresh past the next refresh, so a caller in between starts the retry
+        return new ApiClients(this, resolvedTime, now + backoff, Math.max(expireTime, now + 2 * backoff), failures);
+    }
+
+    ParamApiStrategy paramApi() {
+        return paramApi.get();
+    }
+
+    SyncApi syncApi() {
+        return syncApi.get();
+    }
+
+    GoInsightApi goInsightApi() {
+        return goInsightApi.get();
+    }
+
+    SyncMsgTagApi syncMsgTagApi() {
+        return syncMsgTagApi.get();
+    }
+
+    UpdateApi updateApi() {
+        return updateApi.get();
+    }
+
+    CheckServiceApi checkServiceApi() {
+        return checkServiceApi.get();
+    }
+
+    ActivateApiStrategy activateApi() {
+        return activateApi.get();
+    }
+
+    /**
+     * Create the API objects not created yet, so the first calls do not pay for it.
+     */
+    void warmUp() {
+        paramApi.get();
+        updateApi.get();
+        syncApi.get();
+        syncMsgTagApi.get();
+        checkServiceApi.get();
+        activateApi.get();
+        goInsightApi.get();
+    }
+
+    /**
+     * API object created on first use, loading its classes is kept off the init path.
+     */
+    private abstract static class Lazy<T> {
+        private volatile T value;
+
+        abstract T create();
+
+        T get() {
+            T result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        long start = SdkTracer.begin();
+                        value = result = create();
+                        SdkTracer.end(SdkTracer.API_CREATE, start);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -4,12 +4,10 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
-import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.IBinder;
 import android.os.RemoteException;
-import android.util.Log;
 
 import com.pax.market.android.app.aidl.IApiUrlService;
 import com.pax.market.android.app.aidl.IRemoteSdkService;
@@ -17,15 +15,21 @@ import com.pax.market.android.app.sdk.dto.DcUrlInfo;
 import com.pax.market.android.app.sdk.dto.QueryResult;
 import com.pax.market.android.app.sdk.dto.StoreProxyInfo;
 import com.pax.market.android.app.sdk.dto.TerminalInfo;
-import com.pax.market.android.app.sdk.util.PreferencesUtils;
+import com.pax.market.android.app.sdk.util.SdkLog;
+import com.pax.market.android.app.sdk.util.SdkMetrics;
+import com.pax.market.android.app.sdk.util.SdkStateStore;
+import com.pax.market.android.app.sdk.util.SdkTracer;
 import com.pax.market.api.sdk.java.base.client.ProxyDelegate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.PasswordAuthentication;
 import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.pax.market.android.app.sdk.CommonConstants.ERR_MSG_BIND_PAXSTORE_SERVICE_FAILED;
 import static com.pax.market.android.app.sdk.CommonConstants.ERR_MSG_NULL_RETURNED;
@@ -37,13 +41,10 @@ import static com.pax.market.android.app.sdk.CommonConstants.ERR_MSG_PAXSTORE_MA
 public class BaseApiService implements ProxyDelegate {
     private static final Logger logger = LoggerFactory.getLogger(BaseApiService.class);
 
-    private static final String SP_FILE_NAME = "store.sdk.cfg";
-    private static final String SP_STORE_PROXY_TYPE = "proxyType";
-    private static final String SP_STORE_PROXY_HOST = "proxyHost";
-    private static final String SP_STORE_PROXY_PORT = "proxyPort";
-    private static final String SP_STORE_PROXY_AUTH = "proxyAuthorization";
-    private static final String SP_STORE_PROXY_USER = "proxyUsername";
-    private static final String SP_STORE_PROXY_PASS = "proxyPassword";
+    /**
+     * Resolved proxy address is used for this long, then resolved again
+     */
+    private static final long PROXY_RESOLVE_TTL = 5 * 60_000L;
     private static final String GET_TERMINAL_INFO_ACTION = "com.pax.market.android.app.aidl.REMOTE_SDK_SERVICE";
     public static final String INIT_ACTION = "com.pax.market.android.app.aidl.API_URL_SERVICE";
     public static final String PAXSTORE_PACKAGE_NAME = "com.pax.market.android.app";
@@ -52,12 +53,16 @@ public class BaseApiService implements ProxyDelegate {
     public final String VALUE_NULL = "NULL";
     private static volatile BaseApiService instance;
     private Context context;
-    private SharedPreferences sp;
-    private StoreProxyInfo storeProxy;
+    private SdkStateStore store;
+    /**
+     * Proxy settings, null until read from the state store
+     */
+    private volatile ProxyConfig proxyConfig;
+    private final AtomicBoolean resolvingProxy = new AtomicBoolean();
 
     private BaseApiService(Context context) {
         this.context = context;
-        this.sp = context.getSharedPreferences(SP_FILE_NAME, Context.MODE_PRIVATE);
+        this.store = SdkStateStore.getInstance(context);
     }
 
     public static BaseApiService getInstance(Context context) {
@@ -73,21 +78,28 @@ public class BaseApiService implements ProxyDelegate {
 
     public void init(final String appKey, final String appSecret,
                      final Callback callback1, final ApiCallBack apiCallBack) {
-
+        final long bindStart = SdkMetrics.start();
         ServiceConnection serviceConnection = new ServiceConnection() {
             @Override
             public void onServiceConnected(ComponentName name, IBinder service) {
+                SdkMetrics.stop(SdkMetrics.Timer.BIND_API_URL_SERVICE, bindStart);
+                SdkTracer.end(SdkTracer.BIND_API_URL_SERVICE, bindStart);
                 try {
+                    long aidlStart = SdkTracer.begin();
                     StoreProxyInfo proxyInfo = IApiUrlService.Stub.asInterface(service).getStoreProxyInfo();
+                    SdkTracer.end(SdkTracer.AIDL_GET_PROXY, aidlStart);
                     if (proxyInfo != null) {
-                        logger.info(">>> Init proxy from PAXSTORE : proxy[@{}/{}:{}], proxy authentication={}",
-                                proxyInfo.getType() == 1 ? "HTTP" : proxyInfo.getType() == 2 ? "SOCKS" : "DIRECT",
-                                proxyInfo.getHost(), proxyInfo.getPort(),
-                                proxyInfo.getAuthorization() != null ? "Basic" : proxyInfo.getUsername() != null ? "Password" : "NULL");
+                        if (logger.isInfoEnabled()) {
+                            logger.info(">>> Init proxy from PAXSTORE : proxy[@{}/{}:{}], proxy authentication={}",
+                                    proxyInfo.getType() == 1 ? "HTTP" : proxyInfo.getType() == 2 ? "SOCKS" : "DIRECT",
+                                    proxyInfo.getHost(), proxyInfo.getPort(),
+                                    proxyInfo.getAuthorization() != null ? "Basic" : proxyInfo.getUsername() != null ? "Password" : "NULL");
+                        }
                     } else {
                         logger.warn(">>> Init proxy from PASXTORE : [NULL]");
                     }
                     setStoreProxyInfo(proxyInfo);
+                    aidlStart = SdkTracer.begin();
                     String terminalSn = IApiUrlService.Stub.asInterface(service).getSn();
                     String apiUrl = null;
                     if (terminalSn == null) {
@@ -95,6 +107,7 @@ public class BaseApiService implements ProxyDelegate {
                         apiUrl = IApiUrlService.Stub.asInterface(service).getApiUrl();
                     }
                     String model = IApiUrlService.Stub.asInterface(service).getModel();
+                    SdkTracer.end(SdkTracer.AIDL_GET_TERMINAL, aidlStart);
                     new InitApiAsyncTask().execute(new InitApiParams(apiCallBack, callback1, apiUrl, terminalSn, model));
                 } catch (RemoteException e) {
                     logger.error(">>> Get Api URL error", e);
@@ -121,7 +134,7 @@ public class BaseApiService implements ProxyDelegate {
     }
 
     private String getSN() {
-        Log.w("BaseApiService", "Please update PAXSTORE client to latest version!!");
+        SdkLog.w("BaseApiService", "Please update PAXSTORE client to latest version!!");
         // When it comes to Android 8+， you may not get serialNo by Build.SERIAL. Then you should update PAXSTORE
         // client to the latest version to get SerialNo from PAXSTORE client.
         return Build.SERIAL;
@@ -129,22 +142,38 @@ public class BaseApiService implements ProxyDelegate {
 
 
     public void getDcUrl(final DcCallBack callback1, final String oriBaseUrl) {
+        getDcUrl(callback1, oriBaseUrl, false);
+    }
+
+    /**
+     * @param callback1
+     * @param oriBaseUrl
+     * @param refresh    true to ask PAXSTORE even if the cached DC url is not expired
+     */
+    public void getDcUrl(final DcCallBack callback1, final String oriBaseUrl, final boolean refresh) {
+        final long bindStart = SdkMetrics.start();
         ServiceConnection serviceConnection = new ServiceConnection() {
             @Override
             public void onServiceConnected(ComponentName name, final IBinder service) {
+                SdkMetrics.stop(SdkMetrics.Timer.BIND_API_URL_SERVICE, bindStart);
+                SdkTracer.end(SdkTracer.BIND_API_URL_SERVICE, bindStart);
                 try {
+                    long aidlStart = SdkTracer.begin();
                     StoreProxyInfo proxyInfo = IApiUrlService.Stub.asInterface(service).getStoreProxyInfo();
+                    SdkTracer.end(SdkTracer.AIDL_GET_PROXY, aidlStart);
                     if(proxyInfo != null) {
-                        logger.info(">>> Get proxy from PAXSTORE : proxy[@{}/{}:{}], proxy authentication={}",
-                                proxyInfo.getType() == 1 ? "HTTP" : proxyInfo.getType() == 2 ? "SOCKS" : "DIRECT",
-                                proxyInfo.getHost(), proxyInfo.getPort(),
-                                proxyInfo.getAuthorization() != null ? "Basic" : proxyInfo.getUsername() != null ? "Password" : "NULL");
+                        if (logger.isInfoEnabled()) {
+                            logger.info(">>> Get proxy from PAXSTORE : proxy[@{}/{}:{}], proxy authentication={}",
+                                    proxyInfo.getType() == 1 ? "HTTP" : proxyInfo.getType() == 2 ? "SOCKS" : "DIRECT",
+                                    proxyInfo.getHost(), proxyInfo.getPort(),
+                                    proxyInfo.getAuthorization() != null ? "Basic" : proxyInfo.getUsername() != null ? "Password" : "NULL");
+                        }
                     } else {
                         logger.warn(">>> Get proxy from PASXTORE : [NULL]");
                     }
                     setStoreProxyInfo(proxyInfo);
 
-                    new InitDcUrlAsyncTask().execute(new DcApiParams(callback1, service, oriBaseUrl));
+                    new InitDcUrlAsyncTask().execute(new DcApiParams(callback1, service, oriBaseUrl, refresh));
                 } catch (RemoteException e) {
                     logger.error(">>> Get Api URL error", e);
                     callback1.initFailed(e);
@@ -173,6 +202,7 @@ public class BaseApiService implements ProxyDelegate {
         String terminalSn;
         String model;
         String apiUrl;
+        long queuedAt = SdkTracer.begin();
 
         InitApiParams(ApiCallBack apiCallBack, Callback callback1, String apiUrl, String terminalSn, String model) {
             this.callback1 = callback1;
@@ -191,8 +221,9 @@ public class BaseApiService implements ProxyDelegate {
             if (initApiParams1 == null) {
                 return null;
             }
+            SdkTracer.end(SdkTracer.ASYNC_TASK_WAIT, initApiParams1.queuedAt);
             if (initApiParams1.terminalSn == null || VALUE_NULL.equalsIgnoreCase(initApiParams1.terminalSn)) {
-                Log.w("Init", "sn:" + initApiParams1.terminalSn);
+                SdkLog.w("Init", "sn:{}", initApiParams1.terminalSn);
                 initApiParams1.apiCallBack.initFailed();
                 initApiParams1.callback1.initFailed(new RemoteException(ERR_GET_SN_FAILED));
             } else {
@@ -207,11 +238,14 @@ public class BaseApiService implements ProxyDelegate {
         DcCallBack dcCallBack;
         IBinder service;
         String oriBaseUrl;
+        boolean refresh;
+        long queuedAt = SdkTracer.begin();
 
-        DcApiParams(DcCallBack callback1, IBinder service,  String oriBaseUrl) {
+        DcApiParams(DcCallBack callback1, IBinder service,  String oriBaseUrl, boolean refresh) {
             this.dcCallBack = callback1;
             this.service = service;
             this.oriBaseUrl = oriBaseUrl;
+            this.refresh = refresh;
         }
     }
 
@@ -225,22 +259,28 @@ public class BaseApiService implements ProxyDelegate {
             if (dcCallBack == null) {
                 return null;
             }
+            SdkTracer.end(SdkTracer.ASYNC_TASK_WAIT, dcCallBack.queuedAt);
 
-            DcUrlInfo localDcUrlInfo = PreferencesUtils.getObject(context, CommonConstants.SP_LAST_GET_DCURL_TIME, DcUrlInfo.class);
-            if (localDcUrlInfo != null && localDcUrlInfo.getDcUrl()!= null && !"null".equalsIgnoreCase(localDcUrlInfo.getDcUrl())
+            DcUrlInfo localDcUrlInfo = SdkStateStore.getInstance(context).getDcUrlInfo();
+            if (!dcCallBack.refresh && localDcUrlInfo != null && localDcUrlInfo.getDcUrl()!= null && !"null".equalsIgnoreCase(localDcUrlInfo.getDcUrl())
                     && System.currentTimeMillis() - localDcUrlInfo.getLastAccessTime() < CommonConstants.ONE_HOUR_INTERVAL) {
+                SdkMetrics.increment(SdkMetrics.Counter.DC_URL_CACHE_HIT);
                 dcCallBack.dcCallBack.initSuccess(localDcUrlInfo.getDcUrl());
                 return null;
             }
+            SdkMetrics.increment(SdkMetrics.Counter.DC_URL_CACHE_MISS);
 
             try {
+                long aidlStart = SdkMetrics.start();
                 DcUrlInfo info = IApiUrlService.Stub.asInterface(dcCallBack.service).getDcUrlInfoByTid("");
                 if (info == null) { // if info is null, it explains that the PAXSTORE client is lower than 8.0.0
                     info = IApiUrlService.Stub.asInterface(dcCallBack.service).getDcUrlInfo();
                 }
+                SdkMetrics.stop(SdkMetrics.Timer.DC_URL_RESOLVE, aidlStart);
+                SdkTracer.end(SdkTracer.AIDL_GET_DC_URL, aidlStart);
                 if (info == null) {
                     if (oriBaseUrl == null) { // when PAXSTORE client is lower than 8.0.0，cannot get dcurl, there supposed to have a default url
-                        Log.e("InitDcUrlAsyncTask", ERR_GET_DC_URL_FAILED);
+                        SdkLog.e("InitDcUrlAsyncTask", ERR_GET_DC_URL_FAILED);
                         dcCallBack.dcCallBack.initFailed(new Exception(ERR_GET_DC_URL_FAILED));
                         return null;
                     }
@@ -250,7 +290,7 @@ public class BaseApiService implements ProxyDelegate {
                 }
                 dcCallBack.dcCallBack.initSuccess(info.getDcUrl());
             } catch (RemoteException e) {
-                Log.e("InitDcUrlAsyncTask", "e:" + e);
+                SdkLog.e("InitDcUrlAsyncTask", "Get DC url failed", e);
                 dcCallBack.dcCallBack.initFailed(e);
             }
             return null;
@@ -259,36 +299,54 @@ public class BaseApiService implements ProxyDelegate {
 
     @Override
     public Proxy retrieveProxy() {
-        Proxy proxy = null;
-        StoreProxyInfo storeProxyInfo = getStoreProxyInfo();
-        if(storeProxyInfo != null){
-            switch (storeProxyInfo.getType()){
-                case 1:     // HTTP
-                    proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(storeProxyInfo.getHost(), storeProxyInfo.getPort()));
-                    break;
-                case 2:     // SOCKS
-                    proxy = new Proxy(Proxy.Type.SOCKS, new InetSocketAddress(storeProxyInfo.getHost(), storeProxyInfo.getPort()));
-                    break;
-                default:
-                    proxy = Proxy.NO_PROXY;
-                    break;
-            }
+        ProxyConfig config = getProxyConfig();
+        if (config.needsResolve(System.currentTimeMillis())) {
+            // the last address, or the unresolved one, is used while resolving
+            resolveProxyAsync(config);
         }
-        return proxy;
+        return config.proxy;
     }
 
     @Override
     public String retrieveBasicAuthorization() {
-        StoreProxyInfo storeProxyInfo = getStoreProxyInfo();
+        StoreProxyInfo storeProxyInfo = getProxyConfig().info;
         return storeProxyInfo == null ? null : storeProxyInfo.getAuthorization();
     }
 
     @Override
     public PasswordAuthentication retrievePasswordAuthentication() {
-        if (getStoreProxyInfo() == null || getStoreProxyInfo().getUsername() == null) {
-            return null;
+        return getProxyConfig().passwordAuthentication;
+    }
+
+    /**
+     * Resolve the proxy host in background, the result is used until {@link #PROXY_RESOLVE_TTL} passes.
+     */
+    private void resolveProxyAsync(final ProxyConfig config) {
+        if (!resolvingProxy.compareAndSet(false, true)) {
+            return;
         }
-        return new PasswordAuthentication(getStoreProxyInfo().getUsername(), getStoreProxyInfo().getPassword() == null ? "".toCharArray() : getStoreProxyInfo().getPassword());
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    InetSocketAddress address;
+                    try {
+                        address = new InetSocketAddress(InetAddress.getByName(config.info.getHost()), config.info.getPort());
+                    } catch (UnknownHostException e) {
+                        logger.warn(">>> Resolve proxy host failed: {}", e.toString());
+                        // try again after TTL, the host is resolved when connecting until then
+                        address = InetSocketAddress.createUnresolved(config.info.getHost(), config.info.getPort());
+                    }
+                    synchronized (BaseApiService.this) {
+                        if (proxyConfig == config) {
+                            proxyConfig = config.withAddress(address, System.currentTimeMillis());
+                        }
+                    }
+                } finally {
+                    resolvingProxy.set(false);
+                }
+            }
+        });
     }
 
     public interface Callback {
@@ -318,11 +376,16 @@ public class BaseApiService implements ProxyDelegate {
 
 
     public void getBaseTerminalInfo(final ICallBack iCallBack) {
+        final long bindStart = SdkMetrics.start();
         ServiceConnection serviceConnection = new ServiceConnection() {
             @Override
             public void onServiceConnected(ComponentName name, IBinder service) {
+                SdkMetrics.stop(SdkMetrics.Timer.BIND_REMOTE_SDK_SERVICE, bindStart);
+                SdkTracer.end(SdkTracer.BIND_REMOTE_SDK_SERVICE, bindStart);
                 try {
+                    long aidlStart = SdkTracer.begin();
                     TerminalInfo terminalInfo = IRemoteSdkService.Stub.asInterface(service).getBaseTerminalInfo();
+                    SdkTracer.end(SdkTracer.AIDL_GET_TERMINAL_INFO, aidlStart);
                     if(terminalInfo == null || terminalInfo.getTid()==null || terminalInfo.getTid().isEmpty()){
                         if (terminalInfo.getBussinessCode() == QueryResult.GET_INFO_NOT_ALLOWED.getCode()) {
                             iCallBack.onError(new RemoteException(QueryResult.GET_INFO_NOT_ALLOWED.getMsg()));
@@ -355,45 +418,93 @@ public class BaseApiService implements ProxyDelegate {
     }
 
 
-    public void setStoreProxyInfo(StoreProxyInfo storeProxyInfo){
+    public synchronized void setStoreProxyInfo(StoreProxyInfo storeProxyInfo){
+        StoreProxyInfo current = getProxyConfig().info;
         if(storeProxyInfo == null){
-            if (this.storeProxy != null) {
-                SharedPreferences.Editor editor = sp.edit();
-                editor.remove(SP_STORE_PROXY_TYPE)
-                        .remove(SP_STORE_PROXY_HOST)
-                        .remove(SP_STORE_PROXY_PORT)
-                        .remove(SP_STORE_PROXY_AUTH)
-                        .remove(SP_STORE_PROXY_USER)
-                        .remove(SP_STORE_PROXY_PASS)
-                        .apply();
+            if (current != null) {
+                store.putStoreProxyInfo(null);
             }
         } else {
-            if (!storeProxyInfo.equals(this.storeProxy)) {
-                SharedPreferences.Editor editor = sp.edit();
-                editor.putInt(SP_STORE_PROXY_TYPE, storeProxyInfo.getType())
-                        .putString(SP_STORE_PROXY_HOST, storeProxyInfo.getHost())
-                        .putInt(SP_STORE_PROXY_PORT, storeProxyInfo.getPort())
-                        .putString(SP_STORE_PROXY_AUTH, storeProxyInfo.getAuthorization())
-                        .putString(SP_STORE_PROXY_USER, storeProxyInfo.getUsername())
-                        .putString(SP_STORE_PROXY_PASS, storeProxyInfo.getPassword() == null ? null : String.copyValueOf(storeProxyInfo.getPassword()))
-                        .apply();
+            if (!storeProxyInfo.equals(current)) {
+                store.putStoreProxyInfo(storeProxyInfo);
             }
         }
-        this.storeProxy = storeProxyInfo;
+        if (storeProxyInfo == null ? current != null : !storeProxyInfo.equals(current)) {
+            proxyConfig = ProxyConfig.of(storeProxyInfo);
+        }
     }
 
     public StoreProxyInfo getStoreProxyInfo(){
-        if(this.storeProxy == null && sp.getInt(SP_STORE_PROXY_TYPE, -1) != -1){
-            StoreProxyInfo storeProxyInfo = new StoreProxyInfo();
-            storeProxyInfo.setType(sp.getInt(SP_STORE_PROXY_TYPE, -1));
-            storeProxyInfo.setHost(sp.getString(SP_STORE_PROXY_HOST, null));
-            storeProxyInfo.setPort(sp.getInt(SP_STORE_PROXY_PORT, 0));
-            storeProxyInfo.setAuthorization(sp.getString(SP_STORE_PROXY_AUTH, null));
-            storeProxyInfo.setUsername(sp.getString(SP_STORE_PROXY_USER, null));
-            String password = sp.getString(SP_STORE_PROXY_PASS, null);
-            storeProxyInfo.setPassword(password != null ? password.toCharArray() : null);
-            this.storeProxy = storeProxyInfo;
+        return getProxyConfig().info;
+    }
+
+    private ProxyConfig getProxyConfig() {
+        ProxyConfig config = proxyConfig;
+        if (config != null) {
+            return config;
+        }
+        synchronized (this) {
+            if (proxyConfig == null) {
+                proxyConfig = ProxyConfig.of(store.getStoreProxyInfo());
+            }
+            return proxyConfig;
+        }
+    }
+
+    /**
+     * Immutable proxy settings built from {@link StoreProxyInfo}, replaced as a whole when it changes.
+     */
+    private static final class ProxyConfig {
+        final StoreProxyInfo info;
+        /**
+         * Proxy with the host resolved in background, same as unresolvedProxy until then
+         */
+        final Proxy proxy;
+        final Proxy unresolvedProxy;
+        final PasswordAuthentication passwordAuthentication;
+        /**
+         * When the host was resolved, 0 if not yet
+         */
+        final long resolvedTime;
+
+        private ProxyConfig(StoreProxyInfo info, Proxy proxy, Proxy unresolvedProxy,
+                            PasswordAuthentication passwordAuthentication, long resolvedTime) {
+            this.info = info;
+            this.proxy = proxy;
+            this.unresolvedProxy = unresolvedProxy;
+            this.passwordAuthentication = passwordAuthentication;
+            this.resolvedTime = resolvedTime;
+        }
+
+        static ProxyConfig of(StoreProxyInfo info) {
+            if (info == null) {
+                return new ProxyConfig(null, null, null, null, 0L);
+            }
+            Proxy proxy = createProxy(info.getType(), info.getHost() == null ? null
+                    : InetSocketAddress.createUnresolved(info.getHost(), info.getPort()));
+            PasswordAuthentication passwordAuthentication = info.getUsername() == null ? null
+                    : new PasswordAuthentication(info.getUsername(), info.getPassword() == null ? "".toCharArray() : info.getPassword());
+            return new ProxyConfig(info, proxy, proxy, passwordAuthentication, 0L);
+        }
+
+        ProxyConfig withAddress(InetSocketAddress address, long now) {
+            return new ProxyConfig(info, createProxy(info.getType(), address), unresolvedProxy, passwordAuthentication, now);
+        }
+
+        boolean needsResolve(long now) {
+            return unresolvedProxy != null && unresolvedProxy != Proxy.NO_PROXY
+                    && (resolvedTime == 0 || now - resolvedTime > PROXY_RESOLVE_TTL);
+        }
+
+        private static Proxy createProxy(int type, InetSocketAddress address) {
+            switch (type) {
+                case 1:     // HTTP
+                    return new Proxy(Proxy.Type.HTTP, address);
+                case 2:     // SOCKS
+                    return new Proxy(Proxy.Type.SOCKS, address);
+                default:
+                    return Proxy.NO_PROXY;
+            }
         }
-        return this.storeProxy;
     }
 }
@@ -1,10 +1,10 @@
 package com.pax.market.android.app.sdk;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.pax.market.android.app.sdk.util.SdkJson;
 import com.pax.market.api.sdk.java.base.util.StringUtils;
 
 import org.slf4j.Logger;
@@ -34,16 +34,11 @@ public class CloudMessage {
     private String dataJson;
     private String mediaJson;
 
-    private static Gson gson;
+    /**
+     * @return Gson shared with the rest of the SDK
+     */
     public static Gson getGson() {
-        if (gson == null) {
-            synchronized (CloudMessage.class) {
-                if (gson == null) {
-                    gson = new GsonBuilder().create();
-                }
-            }
-        }
-        return gson;
+        return SdkJson.gson();
     }
 
     private CloudMessage(String notificationJson, String dataJson, String mediaJson) {
@@ -58,7 +53,7 @@ public class CloudMessage {
         try {
             rootElement = parser.parse(json);
         } catch (Exception e) {
-            logger.error("Parse json exception, json=%s", json, e);
+            logger.error("Parse json exception, json={}", json, e);
             return null;
         }
         String notificationJson = null;
@@ -71,7 +66,7 @@ public class CloudMessage {
                     notificationJson = notificationJsonEle.getAsJsonObject().toString();
                 }
             } catch (Exception e) {
-                logger.error("Parse notification json exception, rootElement=%s", rootElement, e);
+                logger.error("Parse notification json exception, rootElement={}", rootElement, e);
             }
             try {
                 JsonElement dataJsonEle = ((JsonObject) rootElement).get(MessageFiled.DATA.getName());
@@ -79,7 +74,7 @@ public class CloudMessage {
                     dataJson = dataJsonEle.getAsJsonObject().toString();
                 }
             } catch (Exception e) {
-                logger.error("Parse data json exception, rootElement=%s", rootElement, e);
+                logger.error("Parse data json exception, rootElement={}", rootElement, e);
             }
 
             try {
@@ -88,7 +83,7 @@ public class CloudMessage {
                     mediaJson = mediaJsonEle.getAsJsonObject().toString();
                 }
             } catch (Exception e) {
-                logger.error("Parse data json exception, rootElement=%s", rootElement, e);
+                logger.error("Parse data json exception, rootElement={}", rootElement, e);
             }
 
         }
@@ -104,7 +99,7 @@ public class CloudMessage {
         try {
             return getGson().fromJson(notificationJson, NotificationMessage.class);
         } catch (Exception e) {
-            logger.error("Parse notification json exception, json=%s", notificationJson, e);
+            logger.error("Parse notification json exception, json={}", notificationJson, e);
             return null;
         }
     }
@@ -129,7 +124,7 @@ public class CloudMessage {
         try {
             return getGson().fromJson(dataJson, classOfT);
         } catch (Exception e) {
-            logger.error("Parse notification json exception, json=%s", dataJson, e);
+            logger.error("Parse notification json exception, json={}", dataJson, e);
             return null;
         }
     }
@@ -138,7 +133,7 @@ public class CloudMessage {
         try {
             return getGson().fromJson(dataJson, typeOfT);
         } catch (Exception e) {
-            logger.error("Parse notification json exception, json=%s", dataJson, e);
+            logger.error("Parse notification json exception, json={}", dataJson, e);
             return null;
         }
     }
@@ -3,18 +3,14 @@ package com.pax.market.android.app.sdk;
 import android.app.IntentService;
 import android.content.Intent;
 import androidx.annotation.Nullable;
-import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.pax.market.android.app.sdk.dto.MediaMesageInfo;
 import com.pax.market.android.app.sdk.util.NotificationUtils;
-import com.pax.market.android.app.sdk.util.PreferencesUtils;
+import com.pax.market.android.app.sdk.util.SdkJson;
+import com.pax.market.android.app.sdk.util.SdkLog;
+import com.pax.market.android.app.sdk.util.SdkMetrics;
 import com.pax.market.api.sdk.java.base.util.StringUtils;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import static com.pax.market.android.app.sdk.PushConstants.*;
 
 /**
@@ -22,7 +18,7 @@ import static com.pax.market.android.app.sdk.PushConstants.*;
  */
 public class CloudMessageService extends IntentService {
     private static final String TAG = CloudMessageService.class.getSimpleName();
-    private static final Logger logger = LoggerFactory.getLogger(CloudMessageService.class);
+    private static final String EXTRA_RECEIVE_TIME = "sdk_receive_time";
 
 
     /**
@@ -41,15 +37,31 @@ public class CloudMessageService extends IntentService {
     @Override
     public int onStartCommand(@Nullable Intent intent, int flags, int startId) {
         NotificationUtils.showForeGround(this, "Cloud message");
+        if (intent != null) {
+            intent.putExtra(EXTRA_RECEIVE_TIME, SdkMetrics.start());
+            SdkMetrics.increment(SdkMetrics.Counter.CLOUD_MESSAGE_RECEIVED);
+            SdkMetrics.addGauge(SdkMetrics.Gauge.CLOUD_MESSAGE_QUEUE_DEPTH, 1);
+        }
         return super.onStartCommand(intent, flags, startId);
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
+        try {
+            handleMessage(intent);
+        } finally {
+            if (intent != null && intent.hasExtra(EXTRA_RECEIVE_TIME)) {
+                SdkMetrics.stop(SdkMetrics.Timer.CLOUD_MESSAGE, intent.getLongExtra(EXTRA_RECEIVE_TIME, 0));
+                SdkMetrics.addGauge(SdkMetrics.Gauge.CLOUD_MESSAGE_QUEUE_DEPTH, -1);
+            }
+        }
+    }
+
+    private void handleMessage(Intent intent) {
         if (intent != null && intent.hasExtra(PUSH_MESSAGE)) {
             String msgId = intent.getStringExtra(PUSH_MESSAGE_ID);
             int msgType = intent.getIntExtra(PUSH_MESSAGE_TYPE, 0);
-            logger.debug(">>> Received new CloudMessage form PAXSTORE. msgId=%s, msgTpye=%d", msgId, msgType);
+            SdkLog.d(TAG, ">>> Received new CloudMessage form PAXSTORE. msgId={}, msgType={}", msgId, msgType);
             String jsonString = decrypt(intent.getStringExtra(PUSH_MESSAGE));
             CloudMessage cloudMessage = CloudMessage.fromJson(jsonString);
             if (cloudMessage != null) {
@@ -92,15 +104,22 @@ public class CloudMessageService extends IntentService {
                 messageIntent.setPackage(getPackageName());
                 messageIntent.addCategory(getPackageName());
                 sendBroadcast(messageIntent);
+                if (msgType == 4) {
+                    // Cache pictures now, so showing the dialog does not wait for network
+                    MediaPlaylist.getInstance(getApplicationContext()).precache();
+                }
             }
         }
     }
 
     private void saveMediaMessage(CloudMessage cloudMessage) {
-        Log.e(TAG, "Add new media message: " + cloudMessage.toString());
-        Gson gson = new GsonBuilder().create();
-        MediaMesageInfo mediaMesageInfo = gson.fromJson(cloudMessage.getMediaJson(), MediaMesageInfo.class);
-        PreferencesUtils.putObject(getApplicationContext(), MEDIA_MESSAGE, mediaMesageInfo);
+        SdkLog.d(TAG, "Add new media message: {}", cloudMessage);
+        MediaMesageInfo mediaMesageInfo = SdkJson.fromJson(cloudMessage.getMediaJson(), MediaMesageInfo.class);
+        if (mediaMesageInfo == null) {
+            return;
+        }
+        MediaPlaylist.getInstance(getApplicationContext()).add(mediaMesageInfo);
+        AdvertisementDialog.clearPrepared();
     }
 
     private String decrypt(String encryptedData) {
@@ -25,6 +25,14 @@ public class CommonConstants {
 
     public static final String SP_LAST_GET_DCURL_TIME =  "sp_last_get_dcurl_time";
 
+    public static final String SP_MEDIA_CACHE_INFO = "sp_media_cache_info";
+
+    public static final String SP_DOWNLOAD_JOURNAL = "sp_param_download_journal";
+    /**
+     * The single download resume point saved by former versions
+     */
+    public static final String SP_LEGACY_LAST_DOWNLOAD = "lastDownload";
+
     public static final String SP_SMALL_LOGO_ICON = "sp_small_logo_icon";
 
     public static final long ONE_HOUR_INTERVAL =  3600_000L;
@@ -3,20 +3,19 @@ package com.pax.market.android.app.sdk;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
-import android.util.Log;
 
 import androidx.annotation.Nullable;
 
 import com.pax.market.android.app.sdk.util.NotificationUtils;
+import com.pax.market.android.app.sdk.util.SdkLog;
 
 public class DelayService extends Service {
 
 
     /**
-     * Ignore tasks within 5 seconds
+     * Commands within 5 seconds are merged into one download, see {@link ParamDownloadTrigger}
      */
     private static final long TIME_FILTER = 5_000L;
     @Nullable
@@ -39,25 +38,18 @@ public class DelayService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         NotificationUtils.showForeGround(this, "Delay Service");
-        Log.d("DelayService", "delayService onStartCommand");
+        SdkLog.d("DelayService", "delayService onStartCommand");
         if (handler == null) {
             handler = new Handler();
             handler.postDelayed(new Runnable() {
                 @Override
                 public void run() {
-                    Intent startIntent = new Intent(CommonConstants.ACTION_START_CUSTOMER_SERVICE);
-                    startIntent.setPackage(getPackageName());
-                    startIntent.addCategory(getPackageName());
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                        startForegroundService(startIntent);
-                    } else {
-                        startService(startIntent);
-                    }
+                    ParamDownloadTrigger.getInstance(getApplicationContext()).dispatch();
                     stopSelf();
                 }
             }, TIME_FILTER);
         } else {
-            Log.w("DelayService", "cmd too fast, ignore");
+            SdkLog.w("DelayService", "cmd too fast, ignore");
         }
         return super.onStartCommand(intent, flags, startId);
     }
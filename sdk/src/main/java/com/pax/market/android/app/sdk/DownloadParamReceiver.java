@@ -3,8 +3,8 @@ package com.pax.market.android.app.sdk;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
-import android.util.Log;
+
+import com.pax.market.android.app.sdk.util.SdkLog;
 
 /**
  * Created by zcy on 2020/06/30 0002.
@@ -17,16 +17,12 @@ public class DownloadParamReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         if ((intent != null && intent.getLongExtra(ParamService.TERMINAL_SEND_TIME, -1L) > 0)
                 || getVerCodeByPackageName(context, STORE_PACKAGENAME) >= 200) {
-            Log.d("DownloadParamReceiver", "Ignore this broadcast, since STORE client will send Intent to ParamService");
+            SdkLog.d("DownloadParamReceiver", "Ignore this broadcast, since STORE client will send Intent to ParamService");
             return;
         }
 
-        Log.i("DownloadParamReceiver", "broadcast received");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            context.startForegroundService(DelayService.getCallingIntent(context));
-        } else {
-            context.startService(DelayService.getCallingIntent(context));
-        }
+        SdkLog.i("DownloadParamReceiver", "broadcast received");
+        ParamDownloadTrigger.getInstance(context).trigger();
     }
 
     /**
@@ -41,7 +37,7 @@ public class DownloadParamReceiver extends BroadcastReceiver {
             verCode = context.getPackageManager()
                     .getPackageInfo(packageName, 0).versionCode;
         } catch (Exception e) {
-            Log.e("DownloadParamReceiver", e.toString());
+            SdkLog.e("DownloadParamReceiver", "Get version code of {} failed, e:{}", packageName, e);
         }
         return verCode;
     }
@@ -9,11 +9,11 @@ import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
-import android.util.Log;
 
-import com.google.gson.Gson;
 import com.pax.market.android.app.sdk.dto.LocationInfo;
 import com.pax.market.android.app.sdk.util.NotificationUtils;
+import com.pax.market.android.app.sdk.util.SdkJson;
+import com.pax.market.android.app.sdk.util.SdkLog;
 
 /**
  * Created by zcy on 2019/5/5 0005.
@@ -32,13 +32,12 @@ public class LocationService extends Service {
     private boolean mBond;
     private Messenger serverMessenger;
     private MyConn conn;
-    private Gson gson = new Gson();
     private Messenger mMessenger = new Messenger(new Handler() {
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_LOCATION_RESPONSE:
-                    LocationInfo locationInfo = gson.fromJson((String) msg.getData().get(LOCATION_RESULT_KEY), LocationInfo.class);
+                    LocationInfo locationInfo = SdkJson.fromJson((String) msg.getData().get(LOCATION_RESULT_KEY), LocationInfo.class);
                     if (locationCallback != null) {
                         locationCallback.locationResponse(locationInfo);
                     }
@@ -64,7 +63,7 @@ public class LocationService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         NotificationUtils.showForeGround(this, "LocationService");
         if (mBond) {
-            Log.w("LocationService", "Already bound service");
+            SdkLog.w("LocationService", "Already bound service");
             return super.onStartCommand(intent, flags, startId);
         }
         //绑定服务
@@ -102,7 +101,7 @@ public class LocationService extends Service {
         public void onServiceConnected(ComponentName name, IBinder service) {
             //连接成功
             serverMessenger = new Messenger(service);
-            Log.i("LocationService", "Location service connected");
+            SdkLog.i("LocationService", "Location service connected");
             mBond = true;
 
 
@@ -112,7 +111,7 @@ public class LocationService extends Service {
                 clientMessage.replyTo = mMessenger;
                 serverMessenger.send(clientMessage);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                SdkLog.w("LocationService", "Request location failed", e);
                 LocationService.this.stopSelf();
             }
         }
@@ -0,0 +1,389 @@
+package com.pax.market.android.app.sdk;
+
+import android.content.Context;
+import android.os.AsyncTask;
+
+import com.google.gson.reflect.TypeToken;
+import com.pax.market.android.app.sdk.dto.MediaCacheInfo;
+import com.pax.market.android.app.sdk.dto.MediaMesageInfo;
+import com.pax.market.android.app.sdk.util.MediaFetcher;
+import com.pax.market.android.app.sdk.util.SdkJson;
+import com.pax.market.android.app.sdk.util.SdkLog;
+import com.pax.market.android.app.sdk.util.SdkStateStore;
+import com.pax.market.android.app.sdk.util.TransferPolicy;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Persistent playlist of the media messages sent from PAXSTORE.
+ * <p>
+ * Messages are indexed by priority (then newest first), the current eligible message is
+ * the first one of the index whose validity window contains now. The answer is kept together
+ * with the time it stops being valid, the end of its window or the start of a message ahead
+ * of it, so {@link #getCurrent()} only walks the index when that time has passed or the index
+ * changed. The walk is bounded by {@link #MAX_SIZE}.
+ * <p>
+ * The playlist is read from the state store, already in memory, in background when the instance
+ * is created, or by the first call needing it. Expired messages are dropped, together with their
+ * cached pictures, in background or on the receive path.
+ * Every message has its own picture file, so the next ones can be cached in advance.
+ */
+public class MediaPlaylist {
+    private static final String TAG = MediaPlaylist.class.getSimpleName();
+
+    /**
+     * Max messages kept, the one with lowest priority is dropped when exceeded
+     */
+    private static final int MAX_SIZE = 20;
+    /**
+     * How many eligible messages have their pictures cached in advance
+     */
+    private static final int PRECACHE_SIZE = 3;
+    private static final String MEDIA_CACHE_DIR = "/adCache/";
+    private static final String MEDIA_FILE_SUFFIX = ".jpeg";
+
+    private static volatile MediaPlaylist instance;
+
+    private final Context context;
+    private final TreeSet<MediaMesageInfo> index = new TreeSet<>(new PlayOrder());
+    private boolean loaded;
+    private MediaMesageInfo current;
+    /**
+     * When {@link #current} has to be looked up again, Long.MIN_VALUE after the index changed
+     */
+    private long currentValidUntil = Long.MIN_VALUE;
+    private boolean pruneScheduled;
+
+    private MediaPlaylist(Context context) {
+        this.context = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    public static MediaPlaylist getInstance(Context context) {
+        if (instance == null) {
+            synchronized (MediaPlaylist.class) {
+                if (instance == null) {
+                    instance = new MediaPlaylist(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Add a new media message, a message with the same picture and template replaces the old one.
+     *
+     * @param mediaMesageInfo
+     */
+    public synchronized void add(MediaMesageInfo mediaMesageInfo) {
+        ensureLoaded();
+        removeExpired(System.currentTimeMillis());
+        mediaMesageInfo.setReceivedTime(System.currentTimeMillis());
+        mediaMesageInfo.setSavedPath(null);
+        Iterator<MediaMesageInfo> iterator = index.iterator();
+        while (iterator.hasNext()) {
+            MediaMesageInfo item = iterator.next();
+            if (mediaMesageInfo.getImgUrl() != null && mediaMesageInfo.getImgUrl().equals(item.getImgUrl())
+                    && mediaMesageInfo.getSavedPath() == null) {
+                // Picture file is named by url, keep it for the new message
+                mediaMesageInfo.setSavedPath(item.getSavedPath());
+            }
+            if (isSameContent(item, mediaMesageInfo)) {
+                iterator.remove();
+            }
+        }
+        index.add(mediaMesageInfo);
+        while (index.size() > MAX_SIZE) {
+            dropCache(index.pollLast());
+        }
+        currentValidUntil = Long.MIN_VALUE;
+        save();
+    }
+
+    /**
+     * Read the playlist if not yet, call it off main thread.
+     */
+    public synchronized void load() {
+        ensureLoaded();
+    }
+
+    /**
+     * Look up the message to show, from memory only, so it can be called on main thread.
+     *
+     * @return the media message to show now, null if there is none
+     */
+    public synchronized MediaMesageInfo getCurrent() {
+        ensureLoaded();
+        long now = System.currentTimeMillis();
+        if (now >= currentValidUntil) {
+            lookUpCurrent(now);
+        }
+        return current;
+    }
+
+    private void lookUpCurrent(long now) {
+        current = null;
+        long validUntil = Long.MAX_VALUE;
+        boolean expired = false;
+        for (MediaMesageInfo item : index) {
+            if (isExpired(item, now)) {
+                expired = true;
+            } else if (isStarted(item, now)) {
+                current = item;
+                if (item.getEndTime() != null) {
+                    validUntil = Math.min(validUntil, item.getEndTime() + 1);
+                }
+                break;
+            } else {
+                // A message ahead of the current one takes over when it starts
+                validUntil = Math.min(validUntil, item.getStartTime());
+            }
+        }
+        currentValidUntil = validUntil;
+        if (expired && !pruneScheduled) {
+            pruneScheduled = true;
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prune();
+                }
+            });
+        }
+    }
+
+    /**
+     * Drop the expired messages and their cached pictures, call it off main thread.
+     */
+    public synchronized void prune() {
+        pruneScheduled = false;
+        ensureLoaded();
+        removeExpired(System.currentTimeMillis());
+    }
+
+    private void removeExpired(long now) {
+        boolean changed = false;
+        Iterator<MediaMesageInfo> iterator = index.iterator();
+        while (iterator.hasNext()) {
+            MediaMesageInfo item = iterator.next();
+            if (isExpired(item, now)) {
+                iterator.remove();
+                dropCache(item);
+                changed = true;
+            }
+        }
+        if (changed) {
+            currentValidUntil = Long.MIN_VALUE;
+            save();
+        }
+    }
+
+    /**
+     * Record the picture cached for the message.
+     *
+     * @param imgUrl
+     * @param savedPath
+     */
+    public synchronized void setSavedPath(String imgUrl, String savedPath) {
+        ensureLoaded();
+        boolean changed = false;
+        for (MediaMesageInfo item : index) {
+            if (imgUrl != null && imgUrl.equals(item.getImgUrl())) {
+                item.setSavedPath(savedPath);
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    /**
+     * Cache pictures of the current message and the ones coming up next.
+     * Network is used, do not call this on main thread.
+     */
+    public void precache() {
+        if (TransferPolicy.getInstance(context).decide(TransferPolicy.Operation.MEDIA_FETCH).isDefer()) {
+            // Pictures are fetched when they are shown
+            SdkLog.d(TAG, "Network too slow, skip precache");
+            return;
+        }
+        List<MediaMesageInfo> upcoming = new ArrayList<>();
+        synchronized (this) {
+            ensureLoaded();
+            long now = System.currentTimeMillis();
+            removeExpired(now);
+            for (MediaMesageInfo item : index) {
+                if (upcoming.size() >= PRECACHE_SIZE) {
+                    break;
+                }
+                if (!isExpired(item, now) && (item.getSavedPath() == null || !new File(item.getSavedPath()).exists())) {
+                    upcoming.add(item);
+                }
+            }
+        }
+        for (MediaMesageInfo item : upcoming) {
+            String savedPath = cacheMedia(context, item.getImgUrl());
+            if (savedPath != null) {
+                setSavedPath(item.getImgUrl(), savedPath);
+            }
+        }
+    }
+
+    /**
+     * Download the picture of imgUrl, the local file is revalidated if it has been cached before.
+     * Network is used, do not call this on main thread.
+     *
+     * @param context
+     * @param imgUrl
+     * @return path of the cached picture, null if failed
+     */
+    public static String cacheMedia(Context context, String imgUrl) {
+        if (imgUrl == null) {
+            return null;
+        }
+        String savePath = getMediaPath(context, imgUrl);
+        String cacheKey = getCacheKey(imgUrl);
+        SdkStateStore store = SdkStateStore.getInstance(context);
+        MediaCacheInfo cacheInfo = null;
+        String cacheJson = store.getString(cacheKey);
+        if (cacheJson != null) {
+            try {
+                cacheInfo = SdkJson.fromJson(cacheJson, MediaCacheInfo.class);
+            } catch (Exception e) {
+                SdkLog.w(TAG, "Broken media cache info", e);
+            }
+        }
+        MediaFetcher.Result result = MediaFetcher.fetch(context, imgUrl, cacheInfo, savePath);
+        if (result.getCode() == MediaFetcher.RESULT_OK) {
+            MediaCacheInfo newCacheInfo = new MediaCacheInfo();
+            newCacheInfo.setUrl(imgUrl);
+            newCacheInfo.setSavedPath(savePath);
+            newCacheInfo.setETag(result.getETag());
+            newCacheInfo.setLastModified(result.getLastModified());
+            store.putString(cacheKey, SdkJson.toJson(newCacheInfo));
+        } else if (result.getCode() == MediaFetcher.RESULT_FAILED) {
+            return null;
+        }
+        return savePath;
+    }
+
+    private static String getMediaPath(Context context, String imgUrl) {
+        return context.getFilesDir() + MEDIA_CACHE_DIR + getMediaName(imgUrl) + MEDIA_FILE_SUFFIX;
+    }
+
+    private static String getCacheKey(String imgUrl) {
+        return CommonConstants.SP_MEDIA_CACHE_INFO + "_" + getMediaName(imgUrl);
+    }
+
+    private static String getMediaName(String imgUrl) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            byte[] digest = md5.digest(imgUrl.getBytes(Charset.forName("UTF-8")));
+            return String.format("%032x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(imgUrl.hashCode());
+        }
+    }
+
+    private void dropCache(MediaMesageInfo item) {
+        if (item == null || item.getImgUrl() == null) {
+            return;
+        }
+        for (MediaMesageInfo other : index) {
+            if (item.getImgUrl().equals(other.getImgUrl())) {
+                return; // still used by another message
+            }
+        }
+        new File(getMediaPath(context, item.getImgUrl())).delete();
+        SdkStateStore.getInstance(context).remove(getCacheKey(item.getImgUrl()));
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        SdkStateStore store = SdkStateStore.getInstance(context);
+        String json = store.getString(PushConstants.MEDIA_PLAYLIST);
+        if (json != null) {
+            try {
+                List<MediaMesageInfo> items = SdkJson.fromJson(json, new TypeToken<List<MediaMesageInfo>>() {
+                }.getType());
+                if (items != null) {
+                    index.addAll(items);
+                }
+            } catch (Exception e) {
+                SdkLog.e(TAG, "Broken media playlist", e);
+            }
+            return;
+        }
+        // Migrate the single media message saved by former versions
+        String legacyJson = store.getString(PushConstants.MEDIA_MESSAGE);
+        if (legacyJson != null) {
+            try {
+                MediaMesageInfo legacy = SdkJson.fromJson(legacyJson, MediaMesageInfo.class);
+                if (legacy != null) {
+                    legacy.setSavedPath(null);
+                    index.add(legacy);
+                    save();
+                }
+            } catch (Exception e) {
+                SdkLog.e(TAG, "Broken media message", e);
+            }
+            store.remove(PushConstants.MEDIA_MESSAGE);
+        }
+    }
+
+    private void save() {
+        SdkStateStore.getInstance(context).putString(PushConstants.MEDIA_PLAYLIST,
+                SdkJson.toJson(new ArrayList<>(index)));
+    }
+
+    private static boolean isSameContent(MediaMesageInfo a, MediaMesageInfo b) {
+        return a.getTemplate() == b.getTemplate()
+                && (a.getImgUrl() == null ? b.getImgUrl() == null : a.getImgUrl().equals(b.getImgUrl()));
+    }
+
+    private static boolean isStarted(MediaMesageInfo item, long now) {
+        return item.getStartTime() == null || item.getStartTime() <= now;
+    }
+
+    private static boolean isExpired(MediaMesageInfo item, long now) {
+        return item.getEndTime() != null && item.getEndTime() < now;
+    }
+
+    /**
+     * Higher priority first, then newer first
+     */
+    private static class PlayOrder implements Comparator<MediaMesageInfo> {
+        @Override
+        public int compare(MediaMesageInfo a, MediaMesageInfo b) {
+            if (a.getPriority() != b.getPriority()) {
+                return a.getPriority() > b.getPriority() ? -1 : 1;
+            }
+            if (a.getReceivedTime() != b.getReceivedTime()) {
+                return a.getReceivedTime() > b.getReceivedTime() ? -1 : 1;
+            }
+            if (a.getTemplate() != b.getTemplate()) {
+                return a.getTemplate() < b.getTemplate() ? -1 : 1;
+            }
+            String urlA = a.getImgUrl() == null ? "" : a.getImgUrl();
+            String urlB = b.getImgUrl() == null ? "" : b.getImgUrl();
+            return urlA.compareTo(urlB);
+        }
+    }
+}
@@ -10,11 +10,12 @@ import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
-import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.Toast;
 
+import com.pax.market.android.app.sdk.util.SdkLog;
+
 public class MessagerActivity extends Activity {
     private boolean mBond;
     private Messenger serverMessenger;
@@ -47,7 +48,7 @@ public class MessagerActivity extends Activity {
                     clientMessage.replyTo = mMessenger;
                     serverMessenger.send(clientMessage);
                 } catch (RemoteException e) {
-                    e.printStackTrace();
+                    SdkLog.w("Main", "Send message failed", e);
                 }
             }
         });
@@ -67,7 +68,7 @@ public class MessagerActivity extends Activity {
         public void onServiceConnected(ComponentName name, IBinder service) {
             //连接成功
             serverMessenger = new Messenger(service);
-            Log.i("Main", "服务连接成功");
+            SdkLog.i("Main", "服务连接成功");
             mBond = true;
         }
 
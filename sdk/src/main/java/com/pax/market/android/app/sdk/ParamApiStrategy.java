@@ -1,10 +1,13 @@
 package com.pax.market.android.app.sdk;
 
 import android.content.Context;
-import android.util.Log;
+import android.os.SystemClock;
 
 import com.pax.market.android.app.sdk.util.NetWorkUtils;
-import com.pax.market.android.app.sdk.util.PreferencesUtils;
+import com.pax.market.android.app.sdk.util.SdkLog;
+import com.pax.market.android.app.sdk.util.SdkMetrics;
+import com.pax.market.android.app.sdk.util.SdkTracer;
+import com.pax.market.android.app.sdk.util.TransferPolicy;
 import com.pax.market.api.sdk.java.api.param.ParamApi;
 import com.pax.market.api.sdk.java.base.constant.ResultCode;
 import com.pax.market.api.sdk.java.base.dto.DownloadResultObject;
@@ -12,7 +15,6 @@ import com.pax.market.api.sdk.java.base.dto.InnerDownloadResultObject;
 import com.pax.market.api.sdk.java.base.dto.LastFailObject;
 
 public class ParamApiStrategy extends ParamApi{
-    private static final String LAST_DOWNLOAD = "lastDownload";
     private Context context;
 
     public ParamApiStrategy(Context context, String baseUrl, String appKey, String appSecret, String terminalSN) {
@@ -24,15 +26,32 @@ public class ParamApiStrategy extends ParamApi{
     public DownloadResultObject downloadParamToPath(String packageName, int versionCode, String saveFilePath) {
 
         boolean mobileNetAvailable = NetWorkUtils.isMobileNetAvailable(context);
-        LastFailObject failTask = PreferencesUtils.getObject(context, LAST_DOWNLOAD, LastFailObject.class);
+        ParamDownloadJournal journal = ParamDownloadJournal.getInstance(context);
+        long bytesBefore = ParamDownloadJournal.bytesOnDisk(saveFilePath);
+        LastFailObject failTask = journal.getResumePoint(packageName, versionCode, saveFilePath, bytesBefore);
 
+        int triggerToken = ParamDownloadTrigger.getInstance(context).onDownloadStarted();
+        long start = SystemClock.elapsedRealtime();
+        long traceStart = SdkTracer.begin();
         InnerDownloadResultObject downloadResultObject = super.downloadParamToPath(packageName,
                 versionCode, saveFilePath, failTask, mobileNetAvailable);
+        SdkTracer.end(SdkTracer.HTTP_PARAM_DOWNLOAD, traceStart);
+        long bytesAfter = ParamDownloadJournal.bytesOnDisk(saveFilePath);
+        if (downloadResultObject.getBusinessCode() == 0) {
+            long duration = SystemClock.elapsedRealtime() - start;
+            SdkMetrics.record(SdkMetrics.Timer.PARAM_DOWNLOAD, duration * 1000_000);
+            // The Java SDK gives no size, the growth of the save path is taken for it. It is no
+            // sample when old files have been replaced, it may be negative or too small then
+            long bytes = bytesAfter - bytesBefore;
+            if (bytes > 0) {
+                TransferPolicy.getInstance(context).record(bytes, duration);
+                SdkMetrics.add(SdkMetrics.Counter.PARAM_DOWNLOAD_BYTES, bytes);
+            }
+        }
         if (downloadResultObject.getBusinessCode() == ResultCode.SDK_DOWNLOAD_IOEXCEPTION.getCode()) {
-            // save one download IOException record
-            PreferencesUtils.putObject(context, LAST_DOWNLOAD, downloadResultObject.getLastFailObject());
+            journal.recordFailure(packageName, versionCode, saveFilePath, downloadResultObject.getLastFailObject(), bytesAfter);
         } else {
-            PreferencesUtils.remove(context, LAST_DOWNLOAD);
+            journal.clear(packageName, versionCode, saveFilePath);
         }
 
         DownloadResultObject resultObject = new DownloadResultObject();
@@ -40,8 +59,9 @@ public class ParamApiStrategy extends ParamApi{
         resultObject.setBusinessCode(downloadResultObject.getBusinessCode());
         resultObject.setParamSavePath(saveFilePath);
         if (resultObject.getBusinessCode() != 0) {
-            Log.e("Download Result:", "errorCode: " + resultObject.getBusinessCode() + " errorMessage: " + resultObject.getMessage());
+            SdkLog.e("Download Result:", "errorCode: {} errorMessage: {}", resultObject.getBusinessCode(), resultObject.getMessage());
         }
+        ParamDownloadTrigger.getInstance(context).onDownloadFinished(triggerToken, resultObject.getBusinessCode());
         return resultObject;
     }
 
@@ -59,7 +79,7 @@ public class ParamApiStrategy extends ParamApi{
         resultObject.setBusinessCode(downloadResultObject.getBusinessCode());
         resultObject.setParamSavePath(saveFilePath);
         if (resultObject.getBusinessCode() != 0) {
-            Log.e("Download Result:", "errorCode: " + resultObject.getBusinessCode() + " errorMessage: " + resultObject.getMessage());
+            SdkLog.e("Download Result:", "errorCode: {} errorMessage: {}", resultObject.getBusinessCode(), resultObject.getMessage());
         }
         return resultObject;
     }
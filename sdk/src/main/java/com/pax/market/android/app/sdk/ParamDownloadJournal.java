@@ -0,0 +1,215 @@
+package com.pax.market.android.app.sdk;
+
+import android.content.Context;
+
+import com.google.gson.reflect.TypeToken;
+import com.pax.market.android.app.sdk.util.SdkJson;
+import com.pax.market.android.app.sdk.util.SdkLog;
+import com.pax.market.android.app.sdk.util.SdkStateStore;
+import com.pax.market.api.sdk.java.base.dto.LastFailObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Journal of the parameter downloads failed with IOException, one entry per
+ * (package, versionCode, save path), so the downloads of different packages and templates
+ * do not overwrite each other's resume point.
+ * <p>
+ * Each entry keeps the resume point, attempt count and bytes already on disk. The entry is dropped
+ * when the partial files are gone or it has failed too many times, so the download restarts from
+ * scratch instead of resuming from a useless record. Retries are delayed by the JobScheduler
+ * backoff of {@link ParamJobService}, the journal does not delay them again.
+ */
+public class ParamDownloadJournal {
+    private static final String TAG = ParamDownloadJournal.class.getSimpleName();
+
+    private static final int MAX_ENTRIES = 16;
+    /**
+     * Resume point is not used any more after this many failures
+     */
+    private static final int MAX_RESUME_ATTEMPTS = 5;
+
+    private static volatile ParamDownloadJournal instance;
+
+    private final Context context;
+    /**
+     * Failure order, an entry is moved to the end when it fails again, the least recently failed
+     * entry is dropped first
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private LastFailObject legacy;
+    private boolean loaded;
+
+    private ParamDownloadJournal(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static ParamDownloadJournal getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ParamDownloadJournal.class) {
+                if (instance == null) {
+                    instance = new ParamDownloadJournal(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param packageName
+     * @param versionCode
+     * @param saveFilePath
+     * @param bytesOnDisk  {@link #bytesOnDisk(String)} of saveFilePath
+     * @return the resume point of the download, null to start from scratch
+     */
+    public synchronized LastFailObject getResumePoint(String packageName, int versionCode, String saveFilePath, long bytesOnDisk) {
+        ensureLoaded();
+        Entry entry = entries.get(keyOf(packageName, versionCode, saveFilePath));
+        if (entry == null) {
+            // The legacy record belongs to whichever download runs first after upgrade
+            LastFailObject resumePoint = legacy;
+            if (legacy != null) {
+                legacy = null;
+                SdkStateStore.getInstance(context).remove(CommonConstants.SP_LEGACY_LAST_DOWNLOAD);
+            }
+            return resumePoint;
+        }
+        if (entry.attempts >= MAX_RESUME_ATTEMPTS) {
+            SdkLog.w(TAG, "Too many failures, restart download: {}", entry.key);
+            drop(entry);
+            return null;
+        }
+        if (entry.bytesCompleted > 0 && bytesOnDisk == 0) {
+            SdkLog.w(TAG, "Partial files are gone, restart download: {}", entry.key);
+            drop(entry);
+            return null;
+        }
+        return entry.lastFailObject;
+    }
+
+    /**
+     * Record a download failed with IOException.
+     *
+     * @param packageName
+     * @param versionCode
+     * @param saveFilePath
+     * @param lastFailObject resume point given by the download
+     * @param bytesOnDisk    {@link #bytesOnDisk(String)} of saveFilePath after the download
+     */
+    public synchronized void recordFailure(String packageName, int versionCode, String saveFilePath,
+                                           LastFailObject lastFailObject, long bytesOnDisk) {
+        ensureLoaded();
+        String key = keyOf(packageName, versionCode, saveFilePath);
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            entry = new Entry();
+            entry.key = key;
+        }
+        entries.put(key, entry);
+        entry.attempts++;
+        entry.lastFailObject = lastFailObject;
+        entry.bytesCompleted = bytesOnDisk;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > MAX_ENTRIES && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+        save();
+    }
+
+    /**
+     * Forget the download, called when it ends without IOException.
+     *
+     * @param packageName
+     * @param versionCode
+     * @param saveFilePath
+     */
+    public synchronized void clear(String packageName, int versionCode, String saveFilePath) {
+        ensureLoaded();
+        if (entries.remove(keyOf(packageName, versionCode, saveFilePath)) != null) {
+            save();
+        }
+    }
+
+    private static String keyOf(String packageName, int versionCode, String saveFilePath) {
+        return packageName + ":" + versionCode + ":" + saveFilePath;
+    }
+
+    private void drop(Entry entry) {
+        entries.remove(entry.key);
+        save();
+    }
+
+    /**
+     * The SDK saves the parameter files, and the partial ones, directly in the save path,
+     * so only its own files are counted.
+     *
+     * @param path save path of a parameter download
+     * @return bytes of the files in path
+     */
+    static long bytesOnDisk(String path) {
+        if (path == null) {
+            return 0;
+        }
+        File file = new File(path);
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isFile()) {
+                    size += child.length();
+                }
+            }
+        }
+        return size;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        SdkStateStore store = SdkStateStore.getInstance(context);
+        String json = store.getString(CommonConstants.SP_DOWNLOAD_JOURNAL);
+        if (json != null) {
+            try {
+                List<Entry> items = SdkJson.fromJson(json, new TypeToken<List<Entry>>() {
+                }.getType());
+                if (items != null) {
+                    for (Entry item : items) {
+                        entries.put(item.key, item);
+                    }
+                }
+            } catch (Exception e) {
+                SdkLog.e(TAG, "Broken download journal", e);
+            }
+        }
+        String legacyJson = store.getString(CommonConstants.SP_LEGACY_LAST_DOWNLOAD);
+        if (legacyJson != null) {
+            try {
+                legacy = SdkJson.fromJson(legacyJson, LastFailObject.class);
+            } catch (Exception e) {
+                SdkLog.e(TAG, "Broken resume point", e);
+            }
+        }
+    }
+
+    private void save() {
+        SdkStateStore.getInstance(context).putString(CommonConstants.SP_DOWNLOAD_JOURNAL, SdkJson.toJson(new ArrayList<>(entries.values())));
+    }
+
+    private static class Entry {
+        private String key;
+        private LastFailObject lastFailObject;
+        private int attempts;
+        private long bytesCompleted;
+    }
+}
@@ -0,0 +1,306 @@
+package com.pax.market.android.app.sdk;
+
+import android.app.job.JobInfo;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import com.pax.market.android.app.sdk.util.PreferencesUtils;
+import com.pax.market.android.app.sdk.util.SdkJson;
+import com.pax.market.android.app.sdk.util.SdkLog;
+import com.pax.market.android.app.sdk.util.SdkStateStore;
+import com.pax.market.api.sdk.java.base.constant.ResultCode;
+
+/**
+ * Coalesce the parameter download commands sent from PAXSTORE.
+ * <p>
+ * IDLE -> PENDING: the first command arrives, download is scheduled with {@link ParamJobService}
+ * ({@link DelayService} below Android 5.0).
+ * Commands arriving while PENDING are merged into it.
+ * <br>PENDING -> RUNNING: the customer service is started to download parameters.
+ * <br>RUNNING -> RERUN_NEEDED: a command arrives during the download.
+ * <br>RUNNING -> IDLE / RERUN_NEEDED -> PENDING: the download finished, exactly one more download
+ * follows if any command arrived meanwhile.
+ * <br>RUNNING -> PENDING: the download failed with IOException, the job is retried with backoff.
+ * <p>
+ * A job stopped by the system leaves the state alone, the download already handed to the customer
+ * service reports back as usual, so the command is never served twice.
+ * <p>
+ * The state is saved in {@link SdkStateStore}, so a pending or interrupted download is started
+ * again after process death.
+ */
+public class ParamDownloadTrigger {
+    private static final String TAG = ParamDownloadTrigger.class.getSimpleName();
+
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_PENDING = 1;
+    public static final int STATE_RUNNING = 2;
+    public static final int STATE_RERUN_NEEDED = 3;
+
+    /**
+     * If the customer service never calls downloadParamToPath, the download is regarded as finished after this.
+     */
+    private static final long RUNNING_TIMEOUT = 10 * 60_000L;
+    /**
+     * Commands within 5 seconds are merged into one download
+     */
+    private static final long DISPATCH_DELAY = 5_000L;
+
+    private static final String KEY_TRIGGER = "sp_param_trigger";
+    /**
+     * The preferences the state was saved to by former versions
+     */
+    private static final String SP_TRIGGER_STATE = "sp_param_trigger_state";
+    private static final String SP_TRIGGER_TIME = "sp_param_trigger_time";
+    private static final String SP_DISPATCH_TIME = "sp_param_dispatch_time";
+    private static final String SP_TRIGGER_LATENCY = "sp_param_trigger_latency";
+    private static final String SP_JOB_NETWORK_TYPE = "sp_param_job_network_type";
+    private static final String SP_JOB_REQUIRES_CHARGING = "sp_param_job_requires_charging";
+    private static final String SP_JOB_REQUIRES_IDLE = "sp_param_job_requires_idle";
+
+    private static volatile ParamDownloadTrigger instance;
+
+    private final Context context;
+    private int state;
+    /**
+     * Time of the first command which is not served yet
+     */
+    private long triggerTime;
+    private long dispatchTime;
+    private long triggerLatency;
+    private int networkType = JobInfo.NETWORK_TYPE_ANY;
+    private boolean requiresCharging;
+    private boolean requiresDeviceIdle;
+    /**
+     * Bumped by every dispatch and by the download reported for it, see {@link #onDownloadStarted()}
+     */
+    private int dispatchSeq;
+
+    private ParamDownloadTrigger(Context context) {
+        this.context = context.getApplicationContext();
+        restore();
+    }
+
+    public static ParamDownloadTrigger getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ParamDownloadTrigger.class) {
+                if (instance == null) {
+                    instance = new ParamDownloadTrigger(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * A download command is received.
+     */
+    public synchronized void trigger() {
+        long now = System.currentTimeMillis();
+        if ((state == STATE_RUNNING || state == STATE_RERUN_NEEDED) && now - dispatchTime > RUNNING_TIMEOUT) {
+            SdkLog.w(TAG, "Download not finished in time, regard it as finished");
+            state = STATE_IDLE;
+        }
+        switch (state) {
+            case STATE_IDLE:
+                triggerTime = now;
+                moveTo(STATE_PENDING);
+                scheduleDispatch();
+                break;
+            case STATE_RUNNING:
+                triggerTime = now;
+                moveTo(STATE_RERUN_NEEDED);
+                break;
+            default:
+                SdkLog.d(TAG, "Command merged, state: {}", state);
+                break;
+        }
+    }
+
+    /**
+     * Constraints of the download job, take effect from the next command. Ignored below Android 5.0.
+     *
+     * @param networkType        one of JobInfo.NETWORK_TYPE_*, default is JobInfo.NETWORK_TYPE_ANY
+     * @param requiresCharging   default is false
+     * @param requiresDeviceIdle default is false
+     */
+    public synchronized void setConstraints(int networkType, boolean requiresCharging, boolean requiresDeviceIdle) {
+        this.networkType = networkType;
+        this.requiresCharging = requiresCharging;
+        this.requiresDeviceIdle = requiresDeviceIdle;
+        save();
+    }
+
+    /**
+     * Start the customer service to download parameters, called when the download job runs.
+     *
+     * @return false if there is nothing to download
+     */
+    synchronized boolean dispatch() {
+        if (state != STATE_PENDING) {
+            return false;
+        }
+        dispatchTime = System.currentTimeMillis();
+        triggerLatency = dispatchTime - triggerTime;
+        dispatchSeq++;
+        moveTo(STATE_RUNNING);
+
+        Intent startIntent = new Intent(CommonConstants.ACTION_START_CUSTOMER_SERVICE);
+        startIntent.setPackage(context.getPackageName());
+        startIntent.addCategory(context.getPackageName());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(startIntent);
+        } else {
+            context.startService(startIntent);
+        }
+        return true;
+    }
+
+    /**
+     * Parameter download starts, called by {@link ParamApiStrategy}. Only a download started while
+     * the customer service is running for a dispatched command is reported back, the downloads
+     * the app starts at other times leave the state alone.
+     *
+     * @return token for {@link #onDownloadFinished(int, int)}, -1 if the download is not reported
+     */
+    synchronized int onDownloadStarted() {
+        return state == STATE_RUNNING || state == STATE_RERUN_NEEDED ? dispatchSeq : -1;
+    }
+
+    /**
+     * Parameter download finished, called by {@link ParamApiStrategy}.
+     *
+     * @param token        returned by {@link #onDownloadStarted()}
+     * @param businessCode result code of the download
+     */
+    synchronized void onDownloadFinished(int token, int businessCode) {
+        if (token < 0 || token != dispatchSeq || (state != STATE_RUNNING && state != STATE_RERUN_NEEDED)) {
+            return;
+        }
+        // Only the first download finished for a dispatch is reported
+        dispatchSeq++;
+        if (businessCode == ResultCode.SDK_DOWNLOAD_IOEXCEPTION.getCode()
+                && ParamJobService.finishRunningJob(true)) {
+            // The retry serves the commands arrived meanwhile as well
+            moveTo(STATE_PENDING);
+            return;
+        }
+        ParamJobService.finishRunningJob(false);
+        if (state == STATE_RUNNING) {
+            moveTo(STATE_IDLE);
+        } else {
+            moveTo(STATE_PENDING);
+            scheduleDispatch();
+        }
+    }
+
+    public synchronized int getState() {
+        return state;
+    }
+
+    /**
+     * @return milliseconds from the last served command to the start of its download, -1 if none
+     */
+    public synchronized long getLastTriggerLatency() {
+        return triggerLatency;
+    }
+
+    private void restore() {
+        state = STATE_IDLE;
+        triggerLatency = -1L;
+        String json = SdkStateStore.getInstance(context).getString(KEY_TRIGGER);
+        Saved saved = null;
+        if (json != null) {
+            try {
+                saved = SdkJson.fromJson(json, Saved.class);
+            } catch (Exception e) {
+                SdkLog.e(TAG, "Broken download trigger state", e);
+            }
+        }
+        if (saved != null) {
+            state = saved.state;
+            triggerTime = saved.triggerTime;
+            dispatchTime = saved.dispatchTime;
+            triggerLatency = saved.triggerLatency;
+            networkType = saved.networkType;
+            requiresCharging = saved.requiresCharging;
+            requiresDeviceIdle = saved.requiresDeviceIdle;
+        } else if (json == null) {
+            migrate();
+        }
+        if (state != STATE_IDLE) {
+            // The former process died before the download was done, start it again
+            SdkLog.i(TAG, "Resume download command, state: {}", state);
+            moveTo(STATE_PENDING);
+            scheduleDispatch();
+        }
+    }
+
+    private void scheduleDispatch() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            ParamJobService.schedule(context, DISPATCH_DELAY, networkType, requiresCharging, requiresDeviceIdle);
+        } else {
+            context.startService(DelayService.getCallingIntent(context));
+        }
+    }
+
+    private void moveTo(int newState) {
+        state = newState;
+        save();
+    }
+
+    /**
+     * Saved as one entry of the state store, a single append to the mapped file
+     */
+    private void save() {
+        Saved saved = new Saved();
+        saved.state = state;
+        saved.triggerTime = triggerTime;
+        saved.dispatchTime = dispatchTime;
+        saved.triggerLatency = triggerLatency;
+        saved.networkType = networkType;
+        saved.requiresCharging = requiresCharging;
+        saved.requiresDeviceIdle = requiresDeviceIdle;
+        SdkStateStore.getInstance(context).putString(KEY_TRIGGER, SdkJson.toJson(saved));
+    }
+
+    /**
+     * Move the state saved in SharedPreferences by former versions into the state store. The entry
+     * is written even if there is nothing to move, so the preferences are only read once.
+     */
+    private void migrate() {
+        SharedPreferences preferences = context.getSharedPreferences(PreferencesUtils.PREFERENCE_NAME, Context.MODE_PRIVATE);
+        try {
+            state = preferences.getInt(SP_TRIGGER_STATE, STATE_IDLE);
+            triggerTime = preferences.getLong(SP_TRIGGER_TIME, 0L);
+            dispatchTime = preferences.getLong(SP_DISPATCH_TIME, 0L);
+            triggerLatency = preferences.getLong(SP_TRIGGER_LATENCY, -1L);
+            networkType = preferences.getInt(SP_JOB_NETWORK_TYPE, JobInfo.NETWORK_TYPE_ANY);
+            requiresCharging = preferences.getBoolean(SP_JOB_REQUIRES_CHARGING, false);
+            requiresDeviceIdle = preferences.getBoolean(SP_JOB_REQUIRES_IDLE, false);
+        } catch (ClassCastException e) {
+            SdkLog.w(TAG, "Broken download trigger preferences");
+        }
+        save();
+        preferences.edit()
+                .remove(SP_TRIGGER_STATE)
+                .remove(SP_TRIGGER_TIME)
+                .remove(SP_DISPATCH_TIME)
+                .remove(SP_TRIGGER_LATENCY)
+                .remove(SP_JOB_NETWORK_TYPE)
+                .remove(SP_JOB_REQUIRES_CHARGING)
+                .remove(SP_JOB_REQUIRES_IDLE)
+                .apply();
+    }
+
+    private static class Saved {
+        private int state;
+        private long triggerTime;
+        private long dispatchTime;
+        private long triggerLatency;
+        private int networkType;
+        private boolean requiresCharging;
+        private boolean requiresDeviceIdle;
+    }
+}
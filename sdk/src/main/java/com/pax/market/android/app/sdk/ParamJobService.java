@@ -0,0 +1,100 @@
+package com.pax.market.android.app.sdk;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+
+import com.pax.market.android.app.sdk.util.SdkLog;
+
+/**
+ * Run the parameter download command with JobScheduler, instead of holding a foreground
+ * {@link DelayService} for the delay. The job waits for the network / charging / idle constraints,
+ * and is retried with exponential backoff when the download ends with an IOException.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class ParamJobService extends JobService {
+    private static final String TAG = ParamJobService.class.getSimpleName();
+
+    private static final int JOB_ID = 0x50415241;
+    private static final long INITIAL_BACKOFF = 30_000L;
+
+    private static ParamJobService runningService;
+    private static JobParameters runningParams;
+
+    /**
+     * Schedule the download job, it replaces the pending one if any. Jobs requiring device idle
+     * have no backoff criteria, JobScheduler does not accept both, they are retried at the next idle.
+     *
+     * @param context
+     * @param delay              minimum delay before the job runs
+     * @param networkType        one of JobInfo.NETWORK_TYPE_*
+     * @param requiresCharging
+     * @param requiresDeviceIdle
+     */
+    static void schedule(Context context, long delay, int networkType, boolean requiresCharging, boolean requiresDeviceIdle) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            SdkLog.e(TAG, "JobScheduler not available");
+            return;
+        }
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID, new ComponentName(context, ParamJobService.class))
+                .setMinimumLatency(delay)
+                .setRequiredNetworkType(networkType)
+                .setRequiresCharging(requiresCharging)
+                .setRequiresDeviceIdle(requiresDeviceIdle);
+        if (!requiresDeviceIdle) {
+            builder.setBackoffCriteria(INITIAL_BACKOFF, JobInfo.BACKOFF_POLICY_EXPONENTIAL);
+        }
+        if (jobScheduler.schedule(builder.build()) != JobScheduler.RESULT_SUCCESS) {
+            SdkLog.e(TAG, "Schedule download job failed");
+        }
+    }
+
+    /**
+     * Tell JobScheduler the running download job is done.
+     *
+     * @param needsReschedule true to retry it with backoff
+     * @return false if there is no running job
+     */
+    static synchronized boolean finishRunningJob(boolean needsReschedule) {
+        if (runningService == null) {
+            return false;
+        }
+        runningService.jobFinished(runningParams, needsReschedule);
+        runningService = null;
+        runningParams = null;
+        return true;
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        SdkLog.d(TAG, "Download job started");
+        synchronized (ParamJobService.class) {
+            runningService = this;
+            runningParams = params;
+        }
+        if (!ParamDownloadTrigger.getInstance(getApplicationContext()).dispatch()) {
+            finishRunningJob(false);
+            return false;
+        }
+        // Job keeps running until ParamApiStrategy reports the download result
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        SdkLog.w(TAG, "Download job stopped by system");
+        synchronized (ParamJobService.class) {
+            runningService = null;
+            runningParams = null;
+        }
+        // The customer service may still be downloading, ParamDownloadTrigger decides about a rerun
+        // when the download reports back, a rescheduled job would dispatch it a second time
+        return false;
+    }
+}
@@ -2,12 +2,11 @@ package com.pax.market.android.app.sdk;
 
 import android.app.IntentService;
 import android.content.Intent;
-import android.os.Build;
-import android.util.Log;
 
 import androidx.annotation.Nullable;
 
 import com.pax.market.android.app.sdk.util.NotificationUtils;
+import com.pax.market.android.app.sdk.util.SdkLog;
 
 /**
  * Created by zhangcy on 2020/5/20.
@@ -44,15 +43,11 @@ public class ParamService extends IntentService {
         String sn = (String) intent.getSerializableExtra(TERMINAL_SERIALNUM);
 
         if (sn == null) {
-            Log.w(TAG, "sn == null");
+            SdkLog.w(TAG, "sn == null");
             return;
         }
         // 此时肯定是新版本的PAXSTORE client, receiver 那边可能收不到，收到的情况也不处理 versionCode>=200
-        Log.i("ParamService", "intent received");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(DelayService.getCallingIntent(getApplicationContext()));
-        } else {
-            startService(DelayService.getCallingIntent(getApplicationContext()));
-        }
+        SdkLog.i("ParamService", "intent received");
+        ParamDownloadTrigger.getInstance(getApplicationContext()).trigger();
     }
 }
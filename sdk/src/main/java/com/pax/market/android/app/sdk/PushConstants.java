@@ -25,6 +25,7 @@ public class PushConstants {
     public static final String ACTION_NOTIFY_MEDIA_MESSAGE_RECEIVED = "com.paxstore.mpush.NOTIFY_MEDIA_MESSAGE_RECEIVED";
 
     public static final String MEDIA_MESSAGE = "media_message";
+    public static final String MEDIA_PLAYLIST = "media_playlist";
     public static final String MEDIA_MESSAGE_FULL = "media_message_full";
     public static final String MEDIA_MESSAGE_MID = "media_message_mid";
     public static final String MEDIA_MESSAGE_TITLE = "media_message_title";
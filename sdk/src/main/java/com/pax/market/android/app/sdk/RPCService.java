@@ -2,22 +2,22 @@ package com.pax.market.android.app.sdk;
 
 import android.app.Service;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
 
+import com.pax.market.android.app.sdk.util.JwtSigner;
 import com.pax.market.android.app.sdk.util.NotificationUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
-
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by fojut on 2017/8/16.
@@ -31,15 +31,70 @@ public class RPCService extends Service {
     private static final int MSG_CONFIRM_UPDATE_RESULT = 0x113;
     private static final String BUNDLE_AUTH_INFO = "AUTH_INFO";
     private static final String BUNDLE_READY_UPDATE = "READY_UPDATE";
+    private static final long TOKEN_LIFETIME = 5 * 60 * 1000;
+    /**
+     * A cached token is signed again once it has less than this left
+     */
+    private static final long TOKEN_REUSE_MARGIN = 60 * 1000;
     private static Inquirer inquirer;
+    private static AsyncInquirer asyncInquirer;
+    private static long asyncInquirerTimeout;
+    /**
+     * Last answer of the async inquirer, replied when it does not answer in time
+     */
+    private static volatile boolean lastReadyUpdate;
     private static String mAppKey;
     private static String mAppSecret;
+    /**
+     * HS512 signer keyed with the app secret, built once per {@link #initInquirer}
+     */
+    private static JwtSigner signer;
+    private static volatile Token token;
+    private static volatile Handler signHandler;
     private Messenger messenger = new Messenger(new MessengerHandler());
 
     public static void initInquirer(String appKey, String appSecret, Inquirer inquirer) {
-        mAppKey = appKey;
-        mAppSecret = appSecret;
+        synchronized (RPCService.class) {
+            mAppKey = appKey;
+            mAppSecret = appSecret;
+            signer = null;
+            token = null;
+        }
         RPCService.inquirer = inquirer;
+        RPCService.asyncInquirer = null;
+        prepareToken(appKey, appSecret);
+    }
+
+    /**
+     * @param appKey
+     * @param appSecret
+     * @param inquirer      asked on a worker thread
+     * @param timeoutMillis how long to wait for the answer, the last answer is replied after that,
+     *                      false if there is none yet
+     */
+    public static void initInquirer(String appKey, String appSecret, AsyncInquirer inquirer, long timeoutMillis) {
+        synchronized (RPCService.class) {
+            mAppKey = appKey;
+            mAppSecret = appSecret;
+            signer = null;
+            token = null;
+        }
+        RPCService.asyncInquirer = inquirer;
+        RPCService.asyncInquirerTimeout = timeoutMillis;
+        RPCService.inquirer = null;
+        prepareToken(appKey, appSecret);
+    }
+
+    private static void prepareToken(String appKey, String appSecret) {
+        if (appKey != null && appSecret != null) {
+            // sign the first token before PAXSTORE asks
+            getSignHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    generateTokenQuietly();
+                }
+            });
+        }
     }
 
     @Override
@@ -47,12 +102,57 @@ public class RPCService extends Service {
         return messenger.getBinder();
     }
 
-    private String generateToken(String appKey, String appSecret) {
-        return Jwts.builder()
-                .setSubject(appKey)
-                .setExpiration(generateExpirationDate())
-                .signWith(SignatureAlgorithm.HS512, appSecret)
-                .compact();
+    /**
+     * @return token with more than {@link #TOKEN_REUSE_MARGIN} left, null if it should be signed again
+     */
+    private static String getCachedToken() {
+        Token cached = token;
+        if (cached != null && cached.expiration - System.currentTimeMillis() > TOKEN_REUSE_MARGIN) {
+            return cached.value;
+        }
+        return null;
+    }
+
+    /**
+     * Reuse the cached token, or sign a new one. Do not call it on main thread.
+     */
+    private static synchronized String generateToken() {
+        String cached = getCachedToken();
+        if (cached != null) {
+            return cached;
+        }
+        if (signer == null) {
+            signer = new JwtSigner(mAppSecret);
+        }
+        long expiration = System.currentTimeMillis() + TOKEN_LIFETIME;
+        String value = signer.sign(mAppKey, expiration);
+        token = new Token(value, expiration);
+        return value;
+    }
+
+    /**
+     * @return token, null if it can not be signed
+     */
+    private static String generateTokenQuietly() {
+        try {
+            return generateToken();
+        } catch (RuntimeException e) {
+            logger.error(">>> generate token error.", e);
+            return null;
+        }
+    }
+
+    private static Handler getSignHandler() {
+        if (signHandler == null) {
+            synchronized (RPCService.class) {
+                if (signHandler == null) {
+                    HandlerThread thread = new HandlerThread("RPCService-sign");
+                    thread.start();
+                    signHandler = new Handler(thread.getLooper());
+                }
+            }
+        }
+        return signHandler;
     }
 
     @Override
@@ -61,40 +161,128 @@ public class RPCService extends Service {
         return super.onStartCommand(intent, flags, startId);
     }
 
-    private Date generateExpirationDate() {
-        return new Date(System.currentTimeMillis() + 5 * 60 * 1000);
-    }
-
-    private Bundle readyUpdate() {
-        Bundle bundle = new Bundle();
-        if (inquirer != null) {
-            bundle.putString(BUNDLE_AUTH_INFO, generateToken(mAppKey, mAppSecret));
-            bundle.putBoolean(BUNDLE_READY_UPDATE, inquirer.isReadyUpdate());
-        } else {
+    /**
+     * Reply whether the app is ready for update. The token is signed on the sign thread if the
+     * cached one can not be reused, so main thread does no signing.
+     */
+    private void readyUpdate(final Messenger replyTo) {
+        if (asyncInquirer != null) {
+            askAsyncInquirer(asyncInquirer, asyncInquirerTimeout, replyTo);
+            return;
+        }
+        if (inquirer == null) {
             logger.warn(">>> inquirer not initialized, just return true...");
+            Bundle bundle = new Bundle();
             bundle.putBoolean(BUNDLE_READY_UPDATE, true);
+            reply(replyTo, bundle);
+            return;
+        }
+        final boolean readyUpdate = inquirer.isReadyUpdate();
+        String cached = getCachedToken();
+        if (cached != null) {
+            reply(replyTo, readyUpdateBundle(cached, readyUpdate));
+            return;
         }
+        getSignHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                reply(replyTo, readyUpdateBundle(generateTokenQuietly(), readyUpdate));
+            }
+        });
+    }
+
+    /**
+     * Ask the async inquirer on a worker thread, and reply its answer, or the last answer if it
+     * does not answer within timeoutMillis, from the sign thread.
+     */
+    private static void askAsyncInquirer(final AsyncInquirer inquirer, long timeoutMillis, final Messenger replyTo) {
+        final AtomicBoolean replied = new AtomicBoolean();
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                if (replied.compareAndSet(false, true)) {
+                    logger.warn(">>> inquirer did not answer in time, reply last answer: {}", lastReadyUpdate);
+                    reply(replyTo, readyUpdateBundle(generateTokenQuietly(), lastReadyUpdate));
+                }
+            }
+        };
+        final Answer answer = new Answer() {
+            @Override
+            public void reply(final boolean readyUpdate) {
+                lastReadyUpdate = readyUpdate;
+                if (replied.compareAndSet(false, true)) {
+                    getSignHandler().removeCallbacks(timeout);
+                    getSignHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            RPCService.reply(replyTo, readyUpdateBundle(generateTokenQuietly(), readyUpdate));
+                        }
+                    });
+                }
+            }
+        };
+        getSignHandler().postDelayed(timeout, timeoutMillis);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    inquirer.isReadyUpdate(answer);
+                } catch (RuntimeException e) {
+                    logger.error(">>> inquirer error.", e);
+                }
+            }
+        });
+    }
+
+    private static Bundle readyUpdateBundle(String authInfo, boolean readyUpdate) {
+        Bundle bundle = new Bundle();
+        bundle.putString(BUNDLE_AUTH_INFO, authInfo);
+        bundle.putBoolean(BUNDLE_READY_UPDATE, readyUpdate);
         return bundle;
     }
 
+    private static void reply(Messenger replyTo, Bundle bundle) {
+        Message message = Message.obtain(null, MSG_CONFIRM_UPDATE_RESULT);
+        message.setData(bundle);
+        try {
+            replyTo.send(message);
+        } catch (RemoteException e) {
+            logger.error(">>> send message error.", e);
+        }
+    }
+
     public interface Inquirer {
         boolean isReadyUpdate();
     }
 
+    public interface AsyncInquirer {
+        /**
+         * Called on a worker thread, answer may be called later from any thread.
+         */
+        void isReadyUpdate(Answer answer);
+    }
+
+    public interface Answer {
+        void reply(boolean readyUpdate);
+    }
+
+    private static final class Token {
+        final String value;
+        final long expiration;
+
+        Token(String value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+
     private class MessengerHandler extends Handler {
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_CONFIRM_UPDATE: {
                     logger.debug(">>> receive confirm update message...");
-                    Messenger messenger = msg.replyTo;
-                    Message message = Message.obtain(null, MSG_CONFIRM_UPDATE_RESULT);
-                    message.setData(readyUpdate());
-                    try {
-                        messenger.send(message);
-                    } catch (RemoteException e) {
-                        logger.error(">>> send message error.", e);
-                    }
+                    readyUpdate(msg.replyTo);
                     break;
                 }
                 default:
@@ -0,0 +1,246 @@
+package com.pax.market.android.app.sdk;
+
+import com.pax.market.android.app.sdk.util.SdkLog;
+import com.pax.market.api.sdk.java.api.check.CheckServiceApi;
+import com.pax.market.api.sdk.java.api.sync.GoInsightApi;
+import com.pax.market.api.sdk.java.api.sync.SyncApi;
+import com.pax.market.api.sdk.java.api.sync.SyncMsgTagApi;
+import com.pax.market.api.sdk.java.api.update.UpdateApi;
+import com.pax.market.api.sdk.java.base.exception.NotInitException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run several StoreSdk calls at the same time, e.g. the update check, tag sync and parameter
+ * download done at app start.
+ * <p>
+ * The DC url is resolved once for the whole batch, then all calls run concurrently under one
+ * deadline, so the batch takes about as long as its slowest call instead of the sum of them.
+ * <pre>
+ * SdkBatch.Result result = StoreSdk.getInstance().batch()
+ *         .add("update", new SdkBatch.Call&lt;UpdateObject&gt;() {
+ *             public UpdateObject call(SdkBatch.Apis apis) {
+ *                 return apis.updateApi().checkUpdate(versionCode, packageName);
+ *             }
+ *         })
+ *         .add("param", ...)
+ *         .execute(10, TimeUnit.SECONDS);
+ * UpdateObject updateObject = result.get("update");
+ * </pre>
+ * Do not execute it on main thread.
+ */
+public class SdkBatch {
+    private static final String TAG = SdkBatch.class.getSimpleName();
+
+    private static volatile ExecutorService executor;
+
+    private final StoreSdk storeSdk;
+    private final Map<String, Call<?>> calls = new LinkedHashMap<>();
+
+    SdkBatch(StoreSdk storeSdk) {
+        this.storeSdk = storeSdk;
+    }
+
+    /**
+     * A logical call of the batch.
+     *
+     * @param <T> result type
+     */
+    public interface Call<T> {
+        /**
+         * @param apis API objects pointing to the resolved DC url, do not call StoreSdk accessors here
+         * @return result of the call
+         * @throws Exception the error is kept in the batch result
+         */
+        T call(Apis apis) throws Exception;
+    }
+
+    /**
+     * Add a call, a call with the same name replaces the former one.
+     *
+     * @param name name to get the result with
+     * @param call
+     * @return this batch
+     */
+    public <T> SdkBatch add(String name, Call<T> call) {
+        calls.put(name, call);
+        return this;
+    }
+
+    /**
+     * Run all the calls and wait for them.
+     *
+     * @param timeout deadline of the whole batch, the calls not finished by then fail with TimeoutException
+     * @param unit
+     * @return result of every call
+     * @throws NotInitException if StoreSdk is not initialized or the DC url can not be resolved
+     */
+    public Result execute(long timeout, TimeUnit unit) throws NotInitException {
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        final Apis apis = storeSdk.prepareBatchApis();
+
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Call<?>> entry : calls.entrySet()) {
+            final Call<?> call = entry.getValue();
+            futures.put(entry.getKey(), getExecutor().submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return call.call(apis);
+                }
+            }));
+        }
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        Map<String, Exception> errors = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+            Future<?> future = entry.getValue();
+            try {
+                values.put(entry.getKey(), future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                errors.put(entry.getKey(), e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                errors.put(entry.getKey(), cause instanceof Exception ? (Exception) cause : e);
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                errors.put(entry.getKey(), e);
+                Thread.currentThread().interrupt();
+            }
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (!errors.isEmpty()) {
+            SdkLog.w(TAG, "Batch finished in {}ms, failed calls: {}", elapsed, errors.keySet());
+        }
+        return new Result(values, errors, elapsed);
+    }
+
+    private static ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (SdkBatch.class) {
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "StoreSdk-batch-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * API objects of StoreSdk, with the DC url of the batch already set.
+     */
+    public static class Apis {
+        private final ApiClients clients;
+
+        Apis(ApiClients clients) {
+            this.clients = clients;
+        }
+
+        public ParamApiStrategy paramApi() {
+            return clients.paramApi();
+        }
+
+        public SyncApi syncApi() {
+            return clients.syncApi();
+        }
+
+        public GoInsightApi goInsightApi() {
+            return clients.goInsightApi();
+        }
+
+        public SyncMsgTagApi syncMsgTagApi() {
+            return clients.syncMsgTagApi();
+        }
+
+        public UpdateApi updateApi() {
+            return clients.updateApi();
+        }
+
+        public CheckServiceApi checkServiceApi() {
+            return clients.checkServiceApi();
+        }
+    }
+
+    /**
+     * Results of a batch, keyed by call name.
+     */
+    public static class Result {
+        private final Map<String, Object> values;
+        private final Map<String, Exception> errors;
+        private final long elapsedMillis;
+
+        Result(Map<String, Object> values, Map<String, Exception> errors, long elapsedMillis) {
+            this.values = Collections.unmodifiableMap(values);
+            this.errors = Collections.unmodifiableMap(errors);
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @param name
+         * @return result of the call, null if it failed
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(String name) {
+            return (T) values.get(name);
+        }
+
+        /**
+         * @param name
+         * @return error of the call, TimeoutException if it missed the deadline, null if it succeeded
+         */
+        public Exception getError(String name) {
+            return errors.get(name);
+        }
+
+        public boolean isSuccess(String name) {
+            return values.containsKey(name);
+        }
+
+        public boolean isAllSuccess() {
+            return errors.isEmpty();
+        }
+
+        /**
+         * @return names of the failed calls
+         */
+        public List<String> getFailedCalls() {
+            return new ArrayList<>(errors.keySet());
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "values=" + values.keySet() +
+                    ", errors=" + errors +
+                    ", elapsedMillis=" + elapsedMillis +
+                    '}';
+        }
+    }
+}
@@ -6,10 +6,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Looper;
 import android.os.RemoteException;
-import android.util.Log;
+import android.text.TextUtils;
 
 import com.pax.market.android.app.sdk.dto.DcUrlInfo;
 import com.pax.market.android.app.sdk.dto.LocationInfo;
@@ -17,7 +18,11 @@ import com.pax.market.android.app.sdk.dto.MediaMesageInfo;
 import com.pax.market.android.app.sdk.dto.OnlineStatusInfo;
 import com.pax.market.android.app.sdk.dto.QueryResult;
 import com.pax.market.android.app.sdk.util.ActivateApiStrategy;
-import com.pax.market.android.app.sdk.util.PreferencesUtils;
+import com.pax.market.android.app.sdk.util.SdkLog;
+import com.pax.market.android.app.sdk.util.SdkMetrics;
+import com.pax.market.android.app.sdk.util.SdkStateStore;
+import com.pax.market.android.app.sdk.util.SdkTracer;
+import com.pax.market.android.app.sdk.util.SdkTransport;
 import com.pax.market.api.sdk.java.api.check.CheckServiceApi;
 import com.pax.market.api.sdk.java.api.sync.GoInsightApi;
 import com.pax.market.api.sdk.java.api.sync.SyncApi;
@@ -30,10 +35,11 @@ import com.pax.market.api.sdk.java.base.util.CryptoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.TimeZone;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static android.content.ContentValues.TAG;
 import static com.pax.market.android.app.sdk.CommonConstants.ERR_MSG_BIND_PAXSTORE_SERVICE_TOO_FAST;
@@ -44,20 +50,24 @@ import static com.pax.market.android.app.sdk.CommonConstants.ERR_MSG_BIND_PAXSTO
 
 public class StoreSdk {
     private static final Logger logger = LoggerFactory.getLogger(StoreSdk.class);
+    private static final String LOG_TAG = "StoreSdk";
 
     private static final String PAXSTORE_PACKAGENAME = "com.pax.market.android.app";
     private static final String PAXSTORE_DETAIL_PAGE = "com.pax.market.android.app.presentation.search.view.activity.SearchAppDetailActivity";
     private static final String PAXSTORE_DOWNLOADLIST_PAGE = "com.pax.market.android.app.presentation.downloadlist.view.activity.DownloadListActivity";
 
     private static final String URI_PREFIX = "market://detail?id=%s";
+    /**
+     * Default fraction of the DC url cache period after which the url is refreshed in background
+     */
+    private static final float DEFAULT_DC_URL_REFRESH_AHEAD = 0.8f;
     private static volatile StoreSdk instance;
-    private ParamApiStrategy paramApi;
-    private SyncApi syncApi;
-    private GoInsightApi goInsightApi;
-    private SyncMsgTagApi syncMsgTagApi;
-    private UpdateApi updateApi;
-    private CheckServiceApi checkServiceApi;
-    private ActivateApiStrategy activateApi;
+    /**
+     * API objects pointing to the current DC url, replaced as a whole when the url changes
+     */
+    private volatile ApiClients clients;
+    private volatile float dcUrlRefreshAhead = DEFAULT_DC_URL_REFRESH_AHEAD;
+    private final AtomicBoolean refreshingClients = new AtomicBoolean();
     private Context context;
 
     private Semaphore semaphore;
@@ -89,18 +99,22 @@ public class StoreSdk {
      */
     public void init(final Context context, final String appKey, final String appSecret,
                      final BaseApiService.Callback callback) throws NullPointerException {
-        if (paramApi == null && syncApi == null && updateApi == null && checkServiceApi == null
-                && activateApi == null && syncMsgTagApi == null && semaphore.availablePermits() != 1) {
+        if (clients == null && semaphore.availablePermits() != 1) {
             validParams(context, appKey, appSecret);
             this.context = context;
+            // Resume the parameter download command interrupted by process death
+            ParamDownloadTrigger.getInstance(context);
+            // Read the media playlist in background, so showing a media message does not wait for it
+            MediaPlaylist.getInstance(context);
             this.appKey = appKey;
             this.appSecret = appSecret;
             try {
-                logger.debug("init acquire 1");
+                SdkLog.d(LOG_TAG, "init acquire 1");
                 semaphore.acquire(1);
             } catch (InterruptedException e) {
-                logger.error("e:" + e);
+                SdkLog.e(LOG_TAG, "Init interrupted", e);
             }
+            final long initStart = SdkTracer.begin();
             BaseApiService.getInstance(context).init(appKey, appSecret, callback,
                     new BaseApiService.ApiCallBack() {
 
@@ -109,17 +123,19 @@ public class StoreSdk {
                             clearLastUrl(context);
                             initApi(context, apiUrl, appKey, appSecret, terminalSn, model, BaseApiService.getInstance(context));
                             semaphore.release(1);
-                            logger.debug("initSuccess >> release acquire 1");
+                            SdkTracer.end(SdkTracer.STORE_SDK_INIT, initStart);
+                            SdkLog.d(LOG_TAG, "initSuccess >> release acquire 1");
                         }
 
                         @Override
                         public void initFailed() {
                             semaphore.release(1);
+                            SdkTracer.end(SdkTracer.STORE_SDK_INIT, initStart);
                             logger.error("initFailed >> release acquire 1");
                         }
                     });
         } else {
-            logger.debug("Initialization is on process or has been done");
+            SdkLog.d(LOG_TAG, "Initialization is on process or has been done");
         }
     }
 
@@ -128,7 +144,38 @@ public class StoreSdk {
      * @param context
      */
     private void clearLastUrl(Context context) {
-        PreferencesUtils.remove(context, CommonConstants.SP_LAST_GET_DCURL_TIME);
+        SdkStateStore.getInstance(context).putDcUrlInfo(null);
+    }
+
+    /**
+     * Set when the DC url is refreshed in background. The url is cached for an hour, once the given
+     * fraction of the hour has passed the next API call starts a refresh and keeps using the cached
+     * url meanwhile. If the refresh fails, the cached url is kept and the refresh is tried again later.
+     *
+     * @param fraction between 0 (exclusive) and 1 (inclusive), 1 turns the background refresh off. Default is 0.8
+     */
+    public void setDcUrlRefreshAhead(float fraction) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("fraction must be in (0, 1]");
+        }
+        this.dcUrlRefreshAhead = fraction;
+    }
+
+    /**
+     * Receive every SDK metric as it is recorded, e.g. bind latency, DC url resolution time and
+     * parameter download time. The listener is called on the recording thread, keep it short.
+     *
+     * @param listener null to stop
+     */
+    public void setMetricsListener(SdkMetrics.Listener listener) {
+        SdkMetrics.setListener(listener);
+    }
+
+    /**
+     * @return SDK metrics recorded so far
+     */
+    public SdkMetrics.Snapshot getMetrics() {
+        return SdkMetrics.snapshot();
     }
 
     /**
@@ -138,15 +185,7 @@ public class StoreSdk {
      * @throws NotInitException
      */
     public ParamApiStrategy paramApi() throws NotInitException {
-        if (paramApi == null) {
-            acquireSemaphore();
-            if (paramApi == null) {
-                throw new NotInitException("Not initialized");
-            }
-        }
-        paramApi.setBaseUrl(getDcUrl(context, paramApi.getBaseUrl(), false));
-        paramApi.setProxyDelegate(BaseApiService.getInstance(context));
-        return paramApi;
+        return resolveClients().paramApi();
     }
 
     /**
@@ -156,15 +195,19 @@ public class StoreSdk {
      * @throws NotInitException
      */
     public ActivateApiStrategy activateApi() throws NotInitException {
-        if (activateApi == null) {
-            acquireSemaphore();
-            if (activateApi == null) {
-                throw new NotInitException("Not initialized");
+        ApiClients snapshot = initializedClients();
+        long now = System.currentTimeMillis();
+        boolean fresh = snapshot.isFresh(now);
+        if (snapshot.needsRefresh(now)) {
+            refreshClientsAsync(snapshot);
+        } else if (!fresh) {
+            DcUrlInfo dcUrlInfo = resolveDcUrl(context, snapshot.baseUrl, true, false);
+            // Without DC url, ActivateApiStrategy finds it by TID itself
+            if (dcUrlInfo != null) {
+                snapshot = publish(snapshot, dcUrlInfo, now);
             }
         }
-        activateApi.setBaseUrl(getDcUrl(context, activateApi.getBaseUrl(), true));
-        activateApi.setProxyDelegate(BaseApiService.getInstance(context));
-        return activateApi;
+        return snapshot.activateApi();
     }
 
     /**
@@ -174,27 +217,11 @@ public class StoreSdk {
      * @throws NotInitException
      */
     public SyncApi syncApi() throws NotInitException {
-        if (syncApi == null) {
-            acquireSemaphore();
-            if (syncApi == null) {
-                throw new NotInitException("Not initialized");
-            }
-        }
-        syncApi.setBaseUrl(getDcUrl(context, syncApi.getBaseUrl(), false));
-        syncApi.setProxyDelegate(BaseApiService.getInstance(context));
-        return syncApi;
+        return resolveClients().syncApi();
     }
 
     public GoInsightApi goInsightApi() throws NotInitException {
-        if (goInsightApi == null) {
-            acquireSemaphore();
-            if (goInsightApi == null) {
-                throw new NotInitException("Not initialized");
-            }
-        }
-        goInsightApi.setBaseUrl(getDcUrl(context, goInsightApi.getBaseUrl(), false));
-        goInsightApi.setProxyDelegate(BaseApiService.getInstance(context));
-        return goInsightApi;
+        return resolveClients().goInsightApi();
     }
 
     /**
@@ -204,15 +231,7 @@ public class StoreSdk {
      * @throws NotInitException
      */
     public UpdateApi updateApi() throws NotInitException {
-        if (updateApi == null) {
-            acquireSemaphore();
-            if (updateApi == null) {
-                throw new NotInitException("Not initialized");
-            }
-        }
-        updateApi.setBaseUrl(getDcUrl(context, updateApi.getBaseUrl(), false));
-        updateApi.setProxyDelegate(BaseApiService.getInstance(context));
-        return updateApi;
+        return resolveClients().updateApi();
     }
 
     /**
@@ -222,15 +241,7 @@ public class StoreSdk {
      * @throws NotInitException
      */
     public CheckServiceApi checkServiceApi() throws NotInitException {
-        if (checkServiceApi == null) {
-            acquireSemaphore();
-            if (checkServiceApi == null) {
-                throw new NotInitException("Not initialized");
-            }
-        }
-        checkServiceApi.setBaseUrl(getDcUrl(context, checkServiceApi.getBaseUrl(), false));
-        checkServiceApi.setProxyDelegate(BaseApiService.getInstance(context));
-        return checkServiceApi;
+        return resolveClients().checkServiceApi();
     }
 
     /**
@@ -240,15 +251,132 @@ public class StoreSdk {
      * @throws NotInitException
      */
     public SyncMsgTagApi syncMsgTabApi() throws NotInitException {
-        if (syncMsgTagApi == null) {
+        return resolveClients().syncMsgTagApi();
+    }
+
+    /**
+     * Create a batch to run several calls concurrently with the DC url resolved once.
+     *
+     * @return new batch
+     */
+    public SdkBatch batch() {
+        return new SdkBatch(this);
+    }
+
+    /**
+     * Resolve the DC url once for all the calls of a batch.
+     *
+     * @return API objects for the calls of a batch
+     * @throws NotInitException
+     */
+    SdkBatch.Apis prepareBatchApis() throws NotInitException {
+        return new SdkBatch.Apis(resolveClients());
+    }
+
+    /**
+     * Get the API objects pointing to the DC url. PAXSTORE is only asked for the url on the
+     * caller's thread when the snapshot has expired, otherwise this is a plain volatile read and a
+     * due refresh runs in background.
+     *
+     * @return current snapshot
+     * @throws NotInitException
+     */
+    private ApiClients resolveClients() throws NotInitException {
+        ApiClients snapshot = initializedClients();
+        long now = System.currentTimeMillis();
+        if (snapshot.isFresh(now)) {
+            if (snapshot.needsRefresh(now)) {
+                refreshClientsAsync(snapshot);
+            }
+            return snapshot;
+        }
+        return publish(snapshot, resolveDcUrl(context, snapshot.baseUrl, false, false), now);
+    }
+
+    private ApiClients initializedClients() throws NotInitException {
+        ApiClients snapshot = clients;
+        if (snapshot == null) {
             acquireSemaphore();
-            if (syncMsgTagApi == null) {
+            snapshot = clients;
+            if (snapshot == null) {
                 throw new NotInitException("Not initialized");
             }
         }
-        syncMsgTagApi.setBaseUrl(getDcUrl(context, syncMsgTagApi.getBaseUrl(), false));
-        syncMsgTagApi.setProxyDelegate(BaseApiService.getInstance(context));
-        return syncMsgTagApi;
+        return snapshot;
+    }
+
+    /**
+     * Publish the snapshot resolved to the DC url, the API objects are only rebuilt if the url changed.
+     */
+    private synchronized ApiClients publish(ApiClients snapshot, DcUrlInfo dcUrlInfo, long now) {
+        ApiClients current = clients;
+        if (current != snapshot && current != null && current.isFresh(now)) {
+            // Resolved by another thread meanwhile
+            return current;
+        }
+        clients = (current == null ? snapshot : current).resolved(dcUrlInfo.getDcUrl(), dcUrlInfo.getLastAccessTime(), dcUrlRefreshAhead);
+        return clients;
+    }
+
+    /**
+     * Ask PAXSTORE for the DC url in background, the snapshot stays in use meanwhile.
+     */
+    private void refreshClientsAsync(final ApiClients snapshot) {
+        if (!refreshingClients.compareAndSet(false, true)) {
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DcUrlInfo dcUrlInfo = null;
+                    try {
+                        dcUrlInfo = resolveDcUrl(context, snapshot.baseUrl, true, true);
+                    } catch (NotInitException e) {
+                        logger.warn("Refresh DC url failed: {}", e.getMessage());
+                    }
+                    publishRefresh(snapshot, dcUrlInfo, System.currentTimeMillis());
+                } finally {
+                    refreshingClients.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Publish the result of a background refresh, unless the snapshot has been replaced meanwhile.
+     *
+     * @param dcUrlInfo null if the refresh failed, then the snapshot is extended with backoff
+     */
+    private synchronized void publishRefresh(ApiClients snapshot, DcUrlInfo dcUrlInfo, long now) {
+        if (clients != snapshot) {
+            return;
+        }
+        if (dcUrlInfo == null) {
+            clients = snapshot.extended(now);
+            logger.warn("Keep DC url {} until {}", snapshot.baseUrl, clients.expireTime);
+        } else {
+            clients = snapshot.resolved(dcUrlInfo.getDcUrl(), dcUrlInfo.getLastAccessTime(), dcUrlRefreshAhead);
+        }
+    }
+
+    /**
+     * Create the API objects in background, e.g. after the first frame is drawn. They are otherwise
+     * created on first use, so init does not load the classes of the APIs the app never calls.
+     * Nothing is done if StoreSdk is not initialized yet.
+     */
+    public void warmUp() {
+        final ApiClients snapshot = clients;
+        if (snapshot == null) {
+            SdkLog.d(LOG_TAG, "Not initialized, skip warm up");
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                snapshot.warmUp();
+            }
+        });
     }
 
     /**
@@ -258,11 +386,7 @@ public class StoreSdk {
      * @return
      */
     public boolean checkInitialization() {
-        if (paramApi != null && syncApi != null && updateApi != null && activateApi != null
-            && checkServiceApi != null && syncMsgTagApi != null) {
-            return true;
-        }
-        return false;
+        return clients != null;
     }
 
     /**
@@ -277,16 +401,18 @@ public class StoreSdk {
      */
     private void acquireSemaphore() {
         try {
-            logger.debug("acquireSemaphore api try acquire 2");
-            Long startTime = System.currentTimeMillis();
+            SdkLog.d(LOG_TAG, "acquireSemaphore api try acquire 2");
+            long startTime = System.currentTimeMillis();
             semaphore.tryAcquire(2, 5, TimeUnit.SECONDS);
-            logger.debug("tryAcquire cost Time:" + (System.currentTimeMillis() - startTime));
+            if (SdkLog.isLoggable(Log.DEBUG)) {
+                SdkLog.d(LOG_TAG, "tryAcquire cost Time: {}ms", System.currentTimeMillis() - startTime);
+            }
         } catch (InterruptedException e) {
-            logger.error("e:" + e);
+            SdkLog.e(LOG_TAG, "Wait for init interrupted", e);
         }
         if (semaphore.availablePermits() == 0) {
             semaphore.release(2);
-            logger.debug("acquireSemaphore api release acquire 2");
+            SdkLog.d(LOG_TAG, "acquireSemaphore api release acquire 2");
         }
     }
 
@@ -309,6 +435,32 @@ public class StoreSdk {
         });
     }
 
+    /**
+     * Update inquirer for apps that need time to decide, e.g. to check the state of a transaction.
+     * The inquirer is asked on a worker thread and can answer later from any thread, so main thread
+     * is never blocked.
+     * <p>
+     * If the inquirer does not answer within timeout, its last answer is replied, false if it has
+     * not answered yet.
+     *
+     * @param inquirer
+     * @param timeout
+     * @param unit
+     */
+    public void initInquirer(final AsyncInquirer inquirer, long timeout, TimeUnit unit) {
+        RPCService.initInquirer(appKey, appSecret, new RPCService.AsyncInquirer() {
+            @Override
+            public void isReadyUpdate(final RPCService.Answer answer) {
+                inquirer.isReadyUpdate(new ReadyUpdateCallback() {
+                    @Override
+                    public void onResult(boolean readyUpdate) {
+                        answer.reply(readyUpdate);
+                    }
+                });
+            }
+        }, unit.toMillis(timeout));
+    }
+
     /**
      * Context, appKey， appSecret， terminalSerialNo will be validated,
      * NullPointerException will be throw when any of this is null.
@@ -340,13 +492,9 @@ public class StoreSdk {
      * @param terminalSerialNo
      */
     public void initApi(Context context, String apiUrl, String appKey, String appSecret, String terminalSerialNo, String model, ProxyDelegate proxyDelegate) {
-        paramApi = new ParamApiStrategy(context, apiUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
-        syncApi = new SyncApi(apiUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
-        updateApi = new UpdateApi(apiUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
-        checkServiceApi = new CheckServiceApi(apiUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
-        goInsightApi = new GoInsightApi(apiUrl, appKey, appSecret, terminalSerialNo, TimeZone.getDefault()).setProxyDelegate(proxyDelegate);
-        activateApi = new ActivateApiStrategy(context, apiUrl, appKey, appSecret, terminalSerialNo, model == null ? "" : model).setProxyDelegate(proxyDelegate);
-        syncMsgTagApi = new SyncMsgTagApi(apiUrl, appKey, appSecret, terminalSerialNo).setProxyDelegate(proxyDelegate);
+        SdkTransport.install();
+        SdkTransport.warmUp(context, apiUrl);
+        clients = new ApiClients(context, apiUrl, appKey, appSecret, terminalSerialNo, model, proxyDelegate);
     }
 
     /**
@@ -371,12 +519,12 @@ public class StoreSdk {
      *                 For the return Object TerminalInfo, please refer to com.pax.market.android.app.sdk.dto.TerminalInfo
      */
     public void getBaseTerminalInfo(Context context, BaseApiService.ICallBack callback) {
-        long lastGetBaseInfo = PreferencesUtils.getLong(context, CommonConstants.SP_LAST_GET_TERMINAL_INFO_TIME, 0L);
+        long lastGetBaseInfo = SdkStateStore.getInstance(context).getLong(SdkStateStore.SLOT_LAST_GET_TERMINAL_INFO_TIME, 0L);
         if (System.currentTimeMillis() - lastGetBaseInfo < 1000L) { //Ignore call within 1 second
             callback.onError(new RemoteException(ERR_MSG_BIND_PAXSTORE_SERVICE_TOO_FAST));
             return;
         }
-        PreferencesUtils.putLong(context, CommonConstants.SP_LAST_GET_TERMINAL_INFO_TIME, System.currentTimeMillis());
+        SdkStateStore.getInstance(context).putLong(SdkStateStore.SLOT_LAST_GET_TERMINAL_INFO_TIME, System.currentTimeMillis());
 
         BaseApiService.getInstance(context).getBaseTerminalInfo(callback);
     }
@@ -398,7 +546,7 @@ public class StoreSdk {
         try {
             context.startActivity(intent);
         } catch (ActivityNotFoundException e) {
-            e.printStackTrace();
+            SdkLog.w(LOG_TAG, "PAXSTORE page not found", e);
         }
     }
 
@@ -417,7 +565,7 @@ public class StoreSdk {
         try {
             context.startActivity(intent);
         } catch (ActivityNotFoundException e) {
-            e.printStackTrace();
+            SdkLog.w(LOG_TAG, "PAXSTORE page not found", e);
         }
     }
 
@@ -429,14 +577,14 @@ public class StoreSdk {
      */
     public OnlineStatusInfo getOnlineStatusFromPAXSTORE(Context context) {
         OnlineStatusInfo onlineStatusInfo = new OnlineStatusInfo();
-        long lastSdkOnlineStatusTime = PreferencesUtils.getLong(context, CommonConstants.SP_LAST_GET_ONLINE_STATUS_TIME, 0L);
+        long lastSdkOnlineStatusTime = SdkStateStore.getInstance(context).getLong(SdkStateStore.SLOT_LAST_GET_ONLINE_STATUS_TIME, 0L);
         if (System.currentTimeMillis() - lastSdkOnlineStatusTime < 1000L) { //Ignore call within 1 second
             onlineStatusInfo.setBusinessCode(QueryResult.GET_ONLINE_STATUS_TOO_FAST.getCode());
             onlineStatusInfo.setMessage(QueryResult.GET_ONLINE_STATUS_TOO_FAST.getMsg());
-            Log.w("StoreSdk", QueryResult.GET_ONLINE_STATUS_TOO_FAST.getMsg());
+            SdkLog.w("StoreSdk", QueryResult.GET_ONLINE_STATUS_TOO_FAST.getMsg());
             return onlineStatusInfo;
         }
-        PreferencesUtils.putLong(context, CommonConstants.SP_LAST_GET_ONLINE_STATUS_TIME, System.currentTimeMillis());
+        SdkStateStore.getInstance(context).putLong(SdkStateStore.SLOT_LAST_GET_ONLINE_STATUS_TIME, System.currentTimeMillis());
 
         //对location表进行操作
         // 和上述类似,只是URI需要更改,从而匹配不同的URI CODE,从而找到不同的数据资源
@@ -453,8 +601,6 @@ public class StoreSdk {
             return onlineStatusInfo;
         }
         while (cursor.moveToNext()) {
-            System.out.println("query job:" + cursor.getInt(0) + " " + cursor.getString(1)
-                    + " " + cursor.getString(2));
             onlineStatusInfo.setBusinessCode(cursor.getInt(0));
             onlineStatusInfo.setMessage(cursor.getString(1));
             Boolean onlineStatus = (cursor.getString(2) != null ?
@@ -478,6 +624,22 @@ public class StoreSdk {
         boolean isReadyUpdate();
     }
 
+    /**
+     * async update inquirer {@link #initInquirer(AsyncInquirer, long, TimeUnit)}
+     */
+    public interface AsyncInquirer {
+        /**
+         * Called on a worker thread.
+         *
+         * @param callback answer with it, from any thread
+         */
+        void isReadyUpdate(ReadyUpdateCallback callback);
+    }
+
+    public interface ReadyUpdateCallback {
+        void onResult(boolean readyUpdate);
+    }
+
     /**
      * Get location from PAXSTORE. （from provider)
      * if can not get loation from provider, get location from old service.
@@ -487,16 +649,16 @@ public class StoreSdk {
      */
     public void startLocate(Context context, LocationService.LocationCallback locationCallback) {
         LocationInfo locationInfo = new LocationInfo();
-        long lastSdkLocateTime = PreferencesUtils.getLong(context, CommonConstants.SP_LAST_GET_LOCATION_TIME, 0L);
+        long lastSdkLocateTime = SdkStateStore.getInstance(context).getLong(SdkStateStore.SLOT_LAST_GET_LOCATION_TIME, 0L);
         if (System.currentTimeMillis() - lastSdkLocateTime < 1000L) { //Ignore call within 1 second
             locationInfo.setBusinessCode(QueryResult.GET_LOCATION_TOO_FAST.getCode());
             locationInfo.setMessage(QueryResult.GET_LOCATION_TOO_FAST.getMsg());
             locationCallback.locationResponse(locationInfo);
-            Log.w("StoreSdk", QueryResult.GET_LOCATION_TOO_FAST.getMsg());
+            SdkLog.w("StoreSdk", QueryResult.GET_LOCATION_TOO_FAST.getMsg());
             return;
         }
 
-        PreferencesUtils.putLong(context, CommonConstants.SP_LAST_GET_LOCATION_TIME, System.currentTimeMillis());
+        SdkStateStore.getInstance(context).putLong(SdkStateStore.SLOT_LAST_GET_LOCATION_TIME, System.currentTimeMillis());
 
         Uri uri_location = Uri.parse("content://com.pax.market.android.app/location");
         ContentResolver resolver = context.getContentResolver();
@@ -513,9 +675,6 @@ public class StoreSdk {
             return;
         } else {
             while (cursor.moveToNext()) {
-                System.out.println("query job:" + cursor.getInt(0) + " " + cursor.getString(1)
-                        + " " + cursor.getString(2) + " " + cursor.getString(3) + " " + cursor.getString(4)
-                        + " " + cursor.getString(5));
                 locationInfo.setBusinessCode(cursor.getInt(0));
                 locationInfo.setMessage(cursor.getString(1));
                 locationInfo.setLongitude(cursor.getString(2));
@@ -532,38 +691,52 @@ public class StoreSdk {
     }
 
     public MediaMesageInfo getMediaMessage(Context context) {
-        return PreferencesUtils.getObject(context, PushConstants.MEDIA_MESSAGE, MediaMesageInfo.class);
+        return MediaPlaylist.getInstance(context).getCurrent();
     }
 
     public String getDcUrl(final Context context, String oriBaseUrl, boolean tid) throws NotInitException {
+        DcUrlInfo dcUrlInfo = resolveDcUrl(context, oriBaseUrl, tid, false);
+        return dcUrlInfo == null ? null : dcUrlInfo.getDcUrl();
+    }
+
+    /**
+     * @param refresh true to ask PAXSTORE even if the cached DC url is not expired
+     * @return DC url with the time it was got from PAXSTORE, which is earlier than now if the cached
+     * url is used. Null if failed and tid is true
+     */
+    private DcUrlInfo resolveDcUrl(final Context context, String oriBaseUrl, boolean tid, final boolean refresh) throws NotInitException {
         if (Looper.myLooper() == Looper.getMainLooper()) {
             throw new NotInitException("Can not do this on MainThread!!");
         }
 
         final StringBuilder dcUrl = new StringBuilder();
+        final AtomicLong resolvedTime = new AtomicLong();
+        long start = SdkTracer.begin();
 
         final CountDownLatch countDownLatch = new CountDownLatch(1);
         BaseApiService.getInstance(context).getDcUrl(new BaseApiService.DcCallBack() {
 
             @Override
             public void initSuccess(String baseUrl) {
-                saveLastUrl(baseUrl, context);
+                resolvedTime.set(saveLastUrl(baseUrl, context, refresh));
+                SdkTransport.warmUp(context, baseUrl);
                 dcUrl.append(baseUrl);
                 countDownLatch.countDown();
             }
 
             @Override
             public void initFailed(Exception e) {
-                Log.e("StoreSdk", "e:" + e);
+                SdkLog.e(LOG_TAG, "Get DC url failed", e);
                 countDownLatch.countDown();
             }
-        }, oriBaseUrl);
+        }, oriBaseUrl, refresh);
 
         try {
             countDownLatch.await(30, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
-            Log.e(TAG, "e:" + e);
+            SdkLog.e(LOG_TAG, "Wait for DC url interrupted", e);
         }
+        SdkTracer.end(SdkTracer.DC_URL_RESOLVE, start);
         if (dcUrl.toString().isEmpty() || dcUrl.toString().equalsIgnoreCase("null")) {
             if (tid) {
                 return null;
@@ -571,19 +744,27 @@ public class StoreSdk {
                 throw new NotInitException("Get baseUrl failed, client is not installed or terminal is not activated.");
             }
         }
-        return dcUrl.toString();
+        DcUrlInfo dcUrlInfo = new DcUrlInfo();
+        dcUrlInfo.setDcUrl(dcUrl.toString());
+        dcUrlInfo.setLastAccessTime(resolvedTime.get());
+        return dcUrlInfo;
     }
 
-    private void saveLastUrl(final String baseUrl, final Context context) {
-        DcUrlInfo localDcUrlInfo = PreferencesUtils.getObject(context, CommonConstants.SP_LAST_GET_DCURL_TIME, DcUrlInfo.class);
-        //update last getDcUrl time if there has been more than one hour.
-        if (localDcUrlInfo == null ||
+    /**
+     * @return when baseUrl was got from PAXSTORE
+     */
+    private long saveLastUrl(final String baseUrl, final Context context, boolean refresh) {
+        DcUrlInfo localDcUrlInfo = SdkStateStore.getInstance(context).getDcUrlInfo();
+        //update last getDcUrl time if refreshed, the url changed or there has been more than one hour.
+        if (refresh || localDcUrlInfo == null || !TextUtils.equals(baseUrl, localDcUrlInfo.getDcUrl()) ||
                 (System.currentTimeMillis() - localDcUrlInfo.getLastAccessTime() > CommonConstants.ONE_HOUR_INTERVAL)) {
             DcUrlInfo dcUrlInfo1 = new DcUrlInfo();
             dcUrlInfo1.setDcUrl(baseUrl);
             dcUrlInfo1.setLastAccessTime(System.currentTimeMillis());
-            PreferencesUtils.putObject(context, CommonConstants.SP_LAST_GET_DCURL_TIME, dcUrlInfo1);
+            SdkStateStore.getInstance(context).putDcUrlInfo(dcUrlInfo1);
+            return dcUrlInfo1.getLastAccessTime();
         }
+        return localDcUrlInfo.getLastAccessTime();
     }
 
 }
@@ -0,0 +1,54 @@
+package com.pax.market.android.app.sdk.dto;
+
+/**
+ * Validators of the media file cached on disk, used to revalidate it against the server.
+ */
+public class MediaCacheInfo {
+
+    private String url;
+    private String savedPath;
+    private String eTag;
+    private String lastModified;
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getSavedPath() {
+        return savedPath;
+    }
+
+    public void setSavedPath(String savedPath) {
+        this.savedPath = savedPath;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public String toString() {
+        return "MediaCacheInfo{" +
+                "url='" + url + '\'' +
+                ", savedPath='" + savedPath + '\'' +
+                ", eTag='" + eTag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                '}';
+    }
+}
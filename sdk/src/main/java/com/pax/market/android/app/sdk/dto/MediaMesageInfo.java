@@ -18,6 +18,16 @@ public class MediaMesageInfo {
     private boolean showLink;
     private String title;
     private String titleColor;
+    /**
+     * Validity window of the message, null means no limit
+     */
+    private Long startTime;
+    private Long endTime;
+    /**
+     * Message with higher priority is shown first
+     */
+    private int priority;
+    private long receivedTime;
 
 
     public String getLinkTextBgColor() {
@@ -132,6 +142,38 @@ public class MediaMesageInfo {
         this.savedPath = savedPath;
     }
 
+    public Long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Long startTime) {
+        this.startTime = startTime;
+    }
+
+    public Long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Long endTime) {
+        this.endTime = endTime;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public long getReceivedTime() {
+        return receivedTime;
+    }
+
+    public void setReceivedTime(long receivedTime) {
+        this.receivedTime = receivedTime;
+    }
+
     @Override
     public String toString() {
         return "MediaMesageInfo{" +
@@ -149,6 +191,10 @@ public class MediaMesageInfo {
                 ", showLink=" + showLink +
                 ", title='" + title + '\'' +
                 ", titleColor='" + titleColor + '\'' +
+                ", startTime=" + startTime +
+                ", endTime=" + endTime +
+                ", priority=" + priority +
+                ", receivedTime=" + receivedTime +
                 '}';
     }
 }
@@ -5,6 +5,8 @@ import android.os.Parcelable;
 
 import com.pax.market.android.app.sdk.util.StringUtils;
 
+import java.util.Arrays;
+
 /**
  * Created by fojut on 2019/1/7.
  */
@@ -132,9 +134,20 @@ public class StoreProxyInfo implements Parcelable {
         if (!StringUtils.equals(username, c.getUsername())) {
             return false;
         }
-        if (StringUtils.equals(getPasswordString(), c.getPasswordString())) {
+        if (!StringUtils.equals(getPasswordString(), c.getPasswordString())) {
             return false;
         }
         return true;
     }
+
+    @Override
+    public int hashCode() {
+        int result = type;
+        result = 31 * result + (host != null ? host.hashCode() : 0);
+        result = 31 * result + port;
+        result = 31 * result + (authorization != null ? authorization.hashCode() : 0);
+        result = 31 * result + (username != null ? username.hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(password);
+        return result;
+    }
 }
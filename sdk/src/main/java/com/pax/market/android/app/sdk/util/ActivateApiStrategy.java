@@ -6,16 +6,30 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.AsyncTask;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.RemoteException;
-import android.util.Log;
 
 import com.pax.market.android.app.aidl.IApiUrlService;
+import com.pax.market.android.app.sdk.BaseApiService;
+import com.pax.market.android.app.sdk.CommonConstants;
 import com.pax.market.android.app.sdk.dto.DcUrlInfo;
 import com.pax.market.api.sdk.java.api.activate.ActivateApi;
 import com.pax.market.api.sdk.java.base.dto.SdkObject;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static android.content.ContentValues.TAG;
 import static com.pax.market.android.app.sdk.BaseApiService.INIT_ACTION;
@@ -23,21 +37,50 @@ import static com.pax.market.android.app.sdk.BaseApiService.PAXSTORE_PACKAGE_NAM
 import static com.pax.market.android.app.sdk.CommonConstants.ERR_MSG_PAXSTORE_MAY_NOT_INSTALLED;
 
 public class ActivateApiStrategy extends ActivateApi {
-    private static final String LAST_DOWNLOAD = "lastDownload";
+    /**
+     * DC url found by a TID is reused for this long, the same period PAXSTORE DC url is cached for
+     */
+    private static final long DC_URL_TTL = CommonConstants.ONE_HOUR_INTERVAL;
+    /**
+     * Max TIDs activated at the same time by {@link #initByTIDs}
+     */
+    private static final int MAX_CONCURRENCY = 4;
+    private static final String ERR_TID_EMPTY = "Tid should not be empty";
+    /**
+     * TID -> DC url found by PAXSTORE client, only the found ones are kept
+     */
+    private static final Map<String, DcUrlInfo> dcUrlCache = new HashMap<>();
+
     private Context context;
+    private final String appKey;
+    private final String appSecret;
+    private final String terminalSN;
+    private final String model;
 
     public ActivateApiStrategy(Context context, String baseUrl, String appKey, String appSecret, String terminalSN, String model) {
         super(baseUrl, appKey, appSecret, terminalSN, model);
         this.context = context;
+        this.appKey = appKey;
+        this.appSecret = appSecret;
+        this.terminalSN = terminalSN;
+        this.model = model;
     }
 
+    /**
+     * Activate by the TID on an API object of its own, pointed to the DC url of the TID, so this
+     * object, shared by the API snapshot, is not changed.
+     *
+     * @param tid
+     * @return result of the activation
+     */
     public SdkObject initByTID(String tid) {
         //先根据tid去找一下dcurl.
         if (tid == null || tid.isEmpty()) {
-            SdkObject sdkObject = new SdkObject();
-            sdkObject.setBusinessCode(-1);
-            sdkObject.setMessage("Tid should not be empty");
-            return sdkObject;
+            return failed(ERR_TID_EMPTY);
+        }
+        DcUrlInfo cached = lookUpDcUrl(tid);
+        if (cached != null) {
+            return activate(tid, cached);
         }
         // 把tid给PAXSTORE client， 让client去根据tid搜索dcurl
         final CountDownLatch countDownLatch = new CountDownLatch(1);
@@ -57,18 +100,250 @@ public class ActivateApiStrategy extends ActivateApi {
         try {
             countDownLatch.await(30, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
-            Log.e(TAG, " e:" + e);
+            SdkLog.e(TAG, "Wait for DC url interrupted", e);
+        }
+        cacheDcUrl(tid, dcUrlInfo);
+        return activate(tid, dcUrlInfo);
+    }
+
+    /**
+     * Called on a worker thread of {@link #initByTIDs} when the activation by a TID is done.
+     */
+    public interface ActivateCallback {
+        void onResult(String tid, SdkObject result);
+    }
+
+    /**
+     * Activate by several TIDs at the same time. The DC urls are found over one connection to PAXSTORE
+     * client, the TIDs found within the last hour are not asked again. Every TID is activated on its
+     * own API object, so this object is not changed.
+     * <p>
+     * Do not call it on main thread.
+     *
+     * @param tids     TIDs to activate by, null ones are skipped
+     * @param timeout  deadline of all the activations, the ones not done by then fail
+     * @param unit
+     * @param callback called as soon as each TID is done, may be null
+     * @return result of every non null TID, in the order of tids
+     */
+    public Map<String, SdkObject> initByTIDs(Collection<String> tids, long timeout, TimeUnit unit,
+                                             final ActivateCallback callback) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Map<String, SdkObject> results = new LinkedHashMap<>();
+        Set<String> pending = new LinkedHashSet<>();
+        for (String tid : tids) {
+            if (tid == null) {
+                continue;
+            }
+            if (tid.isEmpty()) {
+                results.put(tid, failed(ERR_TID_EMPTY));
+            } else {
+                pending.add(tid);
+            }
+        }
+        if (pending.isEmpty()) {
+            return results;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            for (String tid : pending) {
+                results.put(tid, failed("Can not do this on MainThread!!"));
+            }
+            return results;
+        }
+
+        PaxStoreConnection connection = null;
+        for (String tid : pending) {
+            if (getCachedDcUrl(tid) == null) {
+                connection = new PaxStoreConnection();
+                break;
+            }
+        }
+        final IApiUrlService service = connection == null ? null : connection.bind(context, deadline);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(pending.size(), MAX_CONCURRENCY));
+        try {
+            Map<String, Future<SdkObject>> futures = new LinkedHashMap<>();
+            for (final String tid : pending) {
+                futures.put(tid, executor.submit(new Callable<SdkObject>() {
+                    @Override
+                    public SdkObject call() {
+                        SdkObject result = activate(tid, resolveDcUrl(tid, service));
+                        if (callback != null) {
+                            callback.onResult(tid, result);
+                        }
+                        return result;
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<SdkObject>> entry : futures.entrySet()) {
+                Future<SdkObject> future = entry.getValue();
+                try {
+                    results.put(entry.getKey(), future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    results.put(entry.getKey(), failed("Activation timed out"));
+                } catch (ExecutionException e) {
+                    SdkLog.e(TAG, "Activate by {} failed, e:{}", entry.getKey(), e.getCause());
+                    results.put(entry.getKey(), failed(String.valueOf(e.getCause())));
+                } catch (InterruptedException e) {
+                    future.cancel(true);
+                    results.put(entry.getKey(), failed("Activation interrupted"));
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            if (connection != null) {
+                connection.unbind(context);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return DC url of the TID, from the cache or asked from PAXSTORE client
+     */
+    private DcUrlInfo resolveDcUrl(String tid, IApiUrlService service) {
+        DcUrlInfo cached = lookUpDcUrl(tid);
+        if (cached != null) {
+            return cached;
+        }
+        if (service == null) {
+            return failedDcUrl(ERR_MSG_PAXSTORE_MAY_NOT_INSTALLED);
+        }
+        try {
+            long aidlStart = SdkMetrics.start();
+            DcUrlInfo info = service.getDcUrlInfoByTid(tid);
+            SdkMetrics.stop(SdkMetrics.Timer.DC_URL_RESOLVE, aidlStart);
+            SdkTracer.end(SdkTracer.AIDL_GET_DC_URL, aidlStart);
+            if (info == null) {
+                return failedDcUrl("Get null from PAXSTORE client");
+            }
+            cacheDcUrl(tid, info);
+            return info;
+        } catch (RemoteException e) {
+            SdkLog.e(TAG, "Get DC url by {} failed, e:{}", tid, e);
+            return failedDcUrl(e.getMessage());
         }
-        if (dcUrlInfo.getDcUrl() == null || "null".equalsIgnoreCase(dcUrlInfo.getDcUrl())) {
+    }
+
+    /**
+     * Activate on an API object of its own, so the TIDs can be activated at the same time.
+     */
+    private SdkObject activate(String tid, DcUrlInfo dcUrlInfo) {
+        if (!isFound(dcUrlInfo)) {
             SdkObject sdkObject = new SdkObject();
             sdkObject.setMessage(dcUrlInfo.getMessage());
             sdkObject.setBusinessCode(dcUrlInfo.getBusinessCode());
             return sdkObject;
-        } else {
-            setBaseUrl(dcUrlInfo.getDcUrl());
         }
+        ActivateApiStrategy api = new ActivateApiStrategy(context, dcUrlInfo.getDcUrl(), appKey, appSecret, terminalSN, model)
+                .setProxyDelegate(BaseApiService.getInstance(context));
+        return api.initByTID(tid, dcUrlInfo.getDcUrl(), dcUrlInfo.getStaticUrl());
+    }
+
+    /**
+     * {@link #getCachedDcUrl(String)} where the DC url is resolved, counted as a cache hit or miss
+     */
+    private static DcUrlInfo lookUpDcUrl(String tid) {
+        DcUrlInfo info = getCachedDcUrl(tid);
+        SdkMetrics.increment(info != null ? SdkMetrics.Counter.DC_URL_CACHE_HIT : SdkMetrics.Counter.DC_URL_CACHE_MISS);
+        return info;
+    }
+
+    private static DcUrlInfo getCachedDcUrl(String tid) {
+        synchronized (dcUrlCache) {
+            DcUrlInfo info = dcUrlCache.get(tid);
+            if (info != null && System.currentTimeMillis() - info.getLastAccessTime() >= DC_URL_TTL) {
+                dcUrlCache.remove(tid);
+                info = null;
+            }
+            return info;
+        }
+    }
+
+    private static void cacheDcUrl(String tid, DcUrlInfo dcUrlInfo) {
+        if (!isFound(dcUrlInfo)) {
+            return;
+        }
+        DcUrlInfo info = new DcUrlInfo();
+        info.setDcUrl(dcUrlInfo.getDcUrl());
+        info.setStaticUrl(dcUrlInfo.getStaticUrl());
+        info.setBusinessCode(dcUrlInfo.getBusinessCode());
+        info.setMessage(dcUrlInfo.getMessage());
+        info.setLastAccessTime(System.currentTimeMillis());
+        synchronized (dcUrlCache) {
+            dcUrlCache.put(tid, info);
+        }
+    }
+
+    private static boolean isFound(DcUrlInfo dcUrlInfo) {
+        return dcUrlInfo.getDcUrl() != null && !"null".equalsIgnoreCase(dcUrlInfo.getDcUrl());
+    }
+
+    private static SdkObject failed(String message) {
+        SdkObject sdkObject = new SdkObject();
+        sdkObject.setBusinessCode(-1);
+        sdkObject.setMessage(message);
+        return sdkObject;
+    }
 
-        return super.initByTID(tid, dcUrlInfo.getDcUrl(), dcUrlInfo.getStaticUrl());
+    private static DcUrlInfo failedDcUrl(String message) {
+        DcUrlInfo info = new DcUrlInfo();
+        info.setLastAccessTime(System.currentTimeMillis());
+        info.setBusinessCode(-1);
+        info.setMessage(message);
+        return info;
+    }
+
+    /**
+     * Connection to PAXSTORE client kept for all the TIDs of {@link #initByTIDs}.
+     */
+    private static class PaxStoreConnection implements ServiceConnection {
+        private final CountDownLatch connected = new CountDownLatch(1);
+        private volatile IApiUrlService service;
+        private boolean bound;
+        private long bindStart;
+
+        /**
+         * @return the service, null if PAXSTORE client can not be bound before the deadline
+         */
+        IApiUrlService bind(Context context, long deadline) {
+            Intent intent = new Intent(INIT_ACTION);
+            intent.setPackage(PAXSTORE_PACKAGE_NAME);
+            bindStart = SdkMetrics.start();
+            bound = context.bindService(intent, this, Context.BIND_AUTO_CREATE);
+            if (!bound) {
+                context.unbindService(this);
+                return null;
+            }
+            try {
+                connected.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return service;
+        }
+
+        void unbind(Context context) {
+            if (bound) {
+                bound = false;
+                context.unbindService(this);
+            }
+        }
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            SdkMetrics.stop(SdkMetrics.Timer.BIND_API_URL_SERVICE, bindStart);
+            SdkTracer.end(SdkTracer.BIND_API_URL_SERVICE, bindStart);
+            service = IApiUrlService.Stub.asInterface(binder);
+            connected.countDown();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            SdkLog.d(TAG, "onServiceDisconnected");
+            service = null;
+        }
     }
 
     public interface DcCallBack {
@@ -76,9 +351,12 @@ public class ActivateApiStrategy extends ActivateApi {
     }
 
     public void getDcUrlByTid(final DcCallBack callback, final String tid) {
+        final long bindStart = SdkMetrics.start();
         ServiceConnection serviceConnection = new ServiceConnection() {
             @Override
             public void onServiceConnected(ComponentName name, final IBinder service) {
+                SdkMetrics.stop(SdkMetrics.Timer.BIND_API_URL_SERVICE, bindStart);
+                SdkTracer.end(SdkTracer.BIND_API_URL_SERVICE, bindStart);
 
                 new InitDcUrlAsyncTask().execute(new DcApiParams(callback, service, tid));
 
@@ -87,7 +365,7 @@ public class ActivateApiStrategy extends ActivateApi {
 
             @Override
             public void onServiceDisconnected(ComponentName name) {
-                Log.d(TAG, "onServiceDisconnected");
+                SdkLog.d(TAG, "onServiceDisconnected");
             }
         };
 
@@ -125,7 +403,9 @@ public class ActivateApiStrategy extends ActivateApi {
             }
 
             try {
+                long aidlStart = SdkMetrics.start();
                 DcUrlInfo info = IApiUrlService.Stub.asInterface(dcCallBack.service).getDcUrlInfoByTid(tid);
+                SdkMetrics.stop(SdkMetrics.Timer.DC_URL_RESOLVE, aidlStart);
                 if (info == null) {
 
                     info = new DcUrlInfo();
@@ -138,7 +418,7 @@ public class ActivateApiStrategy extends ActivateApi {
                 dcCallBack.dcCallBack.initResult(info);
             } catch (RemoteException e) {
 
-                Log.e("InitDcUrlAsyncTask", "e:" + e);
+                SdkLog.e("InitDcUrlAsyncTask", "Get DC url by TID failed", e);
                 DcUrlInfo info = new DcUrlInfo();
                 info.setBusinessCode(-1);
                 info.setMessage(e.getMessage());
@@ -4,7 +4,6 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
-import android.util.Log;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
@@ -16,8 +15,13 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 public class ImageUtil {
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final long TRANSFER_CHUNK = 64 * 1024L;
 
     public static boolean saveImage(Bitmap photo, String spath) {
         try {
@@ -34,12 +38,143 @@ public class ImageUtil {
             bos.flush();
             bos.close();
         } catch (Exception e) {
-            e.printStackTrace();
+            SdkLog.e("ImageUtil", "Save bitmap failed", e);
             return false;
         }
         return true;
     }
 
+    /**
+     * Stream the raw bytes to file, without decoding and re-encoding.
+     * Bytes are written to a temp file first and renamed to spath at the end,
+     * so a broken transfer never replaces a good file.
+     *
+     * @param inputStream
+     * @param spath
+     * @return bytes written
+     * @throws IOException
+     */
+    public static long saveImage(InputStream inputStream, String spath) throws IOException {
+        return saveImage(inputStream, spath, -1);
+    }
+
+    /**
+     * Same as {@link #saveImage(InputStream, String)}, the file is dropped if the transfer
+     * ends before expectedLength bytes are received.
+     *
+     * @param inputStream
+     * @param spath
+     * @param expectedLength bytes expected, -1 if unknown
+     * @return bytes written
+     * @throws IOException
+     */
+    public static long saveImage(InputStream inputStream, String spath, long expectedLength) throws IOException {
+        return saveImage(inputStream, spath, expectedLength, TRANSFER_CHUNK);
+    }
+
+    /**
+     * Same as {@link #saveImage(InputStream, String, long)}, with the given transfer chunk size.
+     *
+     * @param inputStream
+     * @param spath
+     * @param expectedLength bytes expected, -1 if unknown
+     * @param chunkSize      max bytes transferred at a time
+     * @return bytes written
+     * @throws IOException
+     */
+    public static long saveImage(InputStream inputStream, String spath, long expectedLength, long chunkSize) throws IOException {
+        File file = new File(spath);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File tmpFile = new File(spath + TMP_SUFFIX);
+        ReadableByteChannel source = Channels.newChannel(inputStream);
+        FileOutputStream fos = new FileOutputStream(tmpFile, false);
+        long position = 0;
+        boolean success = false;
+        try {
+            FileChannel target = fos.getChannel();
+            long count;
+            while ((count = target.transferFrom(source, position, chunkSize)) > 0) {
+                position += count;
+            }
+            target.force(false);
+            if (expectedLength >= 0 && expectedLength != position) {
+                throw new IOException("Incomplete transfer, expected " + expectedLength + " bytes, got " + position);
+            }
+            success = true;
+        } finally {
+            try {
+                fos.close();
+            } catch (IOException e) {
+                success = false;
+            }
+            if (!success) {
+                tmpFile.delete();
+            }
+            // The bytes are on disk, a failed close must not hide the transfer result
+            try {
+                source.close();
+            } catch (IOException e) {
+                SdkLog.w("ImageUtil", "Close media stream failed", e);
+            }
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Rename " + tmpFile.getName() + " failed");
+        }
+        return position;
+    }
+
+    /**
+     * Decode the picture saved by {@link #saveImage(InputStream, String)} for display, at full resolution
+     *
+     * @param filePath
+     * @return null if file does not exist or can not be decoded
+     */
+    public static Bitmap getFitSampleBitmap(String filePath) {
+        return getFitSampleBitmap(filePath, 0, 0);
+    }
+
+    /**
+     * Decode the picture saved by {@link #saveImage(InputStream, String)} for display. It is only
+     * subsampled while the result still covers reqWidth x reqHeight, so it is never shown upscaled.
+     *
+     * @param filePath
+     * @param reqWidth  width of the target view in pixels, 0 to decode at full resolution
+     * @param reqHeight height of the target view in pixels, 0 to decode at full resolution
+     * @return null if file does not exist or can not be decoded
+     */
+    public static Bitmap getFitSampleBitmap(String filePath, int reqWidth, int reqHeight) {
+        File rFile = new File(filePath);
+        if (!rFile.exists() || !rFile.canRead()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (reqWidth > 0 && reqHeight > 0) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(filePath, options);
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+            options.inJustDecodeBounds = false;
+        }
+        return BitmapFactory.decodeFile(filePath, options);
+    }
+
+    /**
+     * @return the largest power of 2 keeping both dimensions at least the requested ones
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (width <= 0 || height <= 0) {
+            return inSampleSize;
+        }
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
     /**
      * Get pictures from the corresponding catalog
      *
@@ -57,7 +192,7 @@ public class ImageUtil {
                 Bitmap newBitmap = bd.getBitmap();
                 return newBitmap;
             } catch (IOException e) {
-                Log.e("ImageUtil", e.getMessage(), e);
+                SdkLog.e("ImageUtil", "Read bitmap failed", e);
             } finally {
                 if (fis != null) {
                     try {
@@ -87,11 +222,11 @@ public class ImageUtil {
             bitmap = getFitSampleBitmap(is);
             is.close();
         } catch (MalformedURLException e) {
-            e.printStackTrace();
+            SdkLog.e("ImageUtil", "Illegal picture url", e);
         } catch (IOException e) {
-            e.printStackTrace();
+            SdkLog.e("ImageUtil", "Load picture failed", e);
         } catch (Exception e) {
-            e.printStackTrace();
+            SdkLog.e("ImageUtil", "Decode picture failed", e);
         }
         return bitmap;
     }
@@ -104,8 +239,7 @@ public class ImageUtil {
         byte[] bytes = readStream(inputStream);
         BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
         int i = bytes.length / 1024 / 1024; // 1M以内不缩放
-        Log.d("ImageUtil", "bytes.length:" + bytes.length);
-        Log.d("ImageUtil", "缩小的比例 i:" + i);
+        SdkLog.d("ImageUtil", "bytes.length: {}, 缩小的比例 i: {}", bytes.length, i);
         options.inSampleSize = 2;
         options.inJustDecodeBounds = false;
         return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
@@ -0,0 +1,69 @@
+package com.pax.market.android.app.sdk.util;
+
+import android.util.Base64;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signer of the HS512 JWT the SDK hands to PAXSTORE, e.g. the update inquirer token.
+ * <p>
+ * Only the claims the SDK sends are supported, a subject and an expiration, so the token is
+ * written directly instead of through a JWT and JSON library.
+ */
+public class JwtSigner {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ALGORITHM = "HmacSHA512";
+    private static final int BASE64URL = Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP;
+    private static final String HEADER = encode("{\"alg\":\"HS512\"}".getBytes(UTF_8));
+
+    private final Mac mac;
+
+    /**
+     * @param base64Secret Base64 encoded secret, decoded the way jjwt signWith(HS512, String) does
+     * @throws IllegalArgumentException if the secret is not Base64 or HmacSHA512 is not available
+     */
+    public JwtSigner(String base64Secret) {
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(Base64.decode(base64Secret, Base64.DEFAULT), ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid HS512 key", e);
+        }
+    }
+
+    /**
+     * @param subject    sub claim
+     * @param expiration exp claim, in milliseconds, written in seconds
+     * @return compact JWS
+     */
+    public synchronized String sign(String subject, long expiration) {
+        StringBuilder claims = new StringBuilder(subject.length() + 32);
+        claims.append("{\"sub\":\"");
+        appendEscaped(claims, subject);
+        claims.append("\",\"exp\":").append(expiration / 1000).append('}');
+        String signingInput = HEADER + '.' + encode(claims.toString().getBytes(UTF_8));
+        byte[] signature = mac.doFinal(signingInput.getBytes(UTF_8));
+        return signingInput + '.' + encode(signature);
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.encodeToString(bytes, BASE64URL);
+    }
+
+    private static void appendEscaped(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.pax.market.android.app.sdk.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.pax.market.android.app.sdk.dto.MediaCacheInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+
+/**
+ * Fetch advertisement media through the PAXSTORE proxy.
+ * <p>
+ * If the media has been cached before, the request is sent with If-None-Match / If-Modified-Since,
+ * so an unchanged creative only costs a 304 instead of a full transfer.
+ */
+public class MediaFetcher {
+    private static final String TAG = MediaFetcher.class.getSimpleName();
+
+    public static final int RESULT_OK = 0;
+    public static final int RESULT_NOT_MODIFIED = 1;
+    public static final int RESULT_FAILED = -1;
+
+    private static final int MAX_RETRY = 2;
+    private static final long RETRY_INTERVAL = 1_000L;
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    private MediaFetcher() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Fetch media from url, retry on IO errors and server errors.
+     *
+     * @param context
+     * @param url       media url
+     * @param cacheInfo validators of the local cached file, null if nothing cached
+     * @param savePath  where the raw media bytes are saved when the server sends a new one
+     * @return fetch result, never null
+     */
+    public static Result fetch(Context context, String url, MediaCacheInfo cacheInfo, String savePath) {
+        if (url == null) {
+            return new Result(RESULT_FAILED, null, null);
+        }
+        for (int attempt = 1; ; attempt++) {
+            long start = SdkTracer.begin();
+            try {
+                return doFetch(context, url, cacheInfo, savePath);
+            } catch (MalformedURLException e) {
+                SdkLog.e(TAG, "Illegal media url: {}", url);
+                break;
+            } catch (IOException e) {
+                SdkLog.w(TAG, "Fetch media failed, attempt {}, e:{}", attempt, e);
+                if (attempt > MAX_RETRY) {
+                    break;
+                }
+                SystemClock.sleep(RETRY_INTERVAL * attempt);
+            } finally {
+                SdkTracer.end(SdkTracer.HTTP_MEDIA, start);
+            }
+        }
+        return new Result(RESULT_FAILED, null, null);
+    }
+
+    private static Result doFetch(Context context, String url, MediaCacheInfo cacheInfo, String savePath) throws IOException {
+        HttpURLConnection conn = SdkTransport.open(context, url);
+        conn.setDoInput(true);
+        if (isRevalidatable(url, cacheInfo)) {
+            if (cacheInfo.getETag() != null) {
+                conn.setRequestProperty(HEADER_IF_NONE_MATCH, cacheInfo.getETag());
+            }
+            if (cacheInfo.getLastModified() != null) {
+                conn.setRequestProperty(HEADER_IF_MODIFIED_SINCE, cacheInfo.getLastModified());
+            }
+        }
+
+        TransferPolicy transferPolicy = TransferPolicy.getInstance(context);
+        int responseCode = conn.getResponseCode();
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            SdkTransport.release(conn, conn.getErrorStream());
+            return new Result(RESULT_NOT_MODIFIED, cacheInfo.getETag(), cacheInfo.getLastModified());
+        }
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+            int chunkSize = transferPolicy.decide(TransferPolicy.Operation.MEDIA_FETCH).getChunkSize();
+            long bodyStart = SystemClock.elapsedRealtime();
+            long bytes = ImageUtil.saveImage(conn.getInputStream(), savePath, conn.getContentLength(), chunkSize);
+            transferPolicy.record(bytes, SystemClock.elapsedRealtime() - bodyStart);
+            return new Result(RESULT_OK, conn.getHeaderField(HEADER_ETAG), conn.getHeaderField(HEADER_LAST_MODIFIED));
+        }
+        SdkTransport.release(conn, conn.getErrorStream());
+        if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+            throw new IOException("Server responded " + responseCode);
+        }
+        SdkLog.e(TAG, "Fetch media failed, responseCode: {}", responseCode);
+        return new Result(RESULT_FAILED, null, null);
+    }
+
+    /**
+     * Conditional headers only make sense when the cached file is still there and belongs to the same url.
+     */
+    private static boolean isRevalidatable(String url, MediaCacheInfo cacheInfo) {
+        return cacheInfo != null && url.equals(cacheInfo.getUrl())
+                && cacheInfo.getSavedPath() != null && new File(cacheInfo.getSavedPath()).exists()
+                && (cacheInfo.getETag() != null || cacheInfo.getLastModified() != null);
+    }
+
+    public static class Result {
+        private final int code;
+        private final String eTag;
+        private final String lastModified;
+
+        Result(int code, String eTag, String lastModified) {
+            this.code = code;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -39,18 +39,6 @@ public class NetWorkUtils {
     }
 
 
-    /**
-     * 获取活动网络信息
-     * <p>需添加权限 {@code <uses-permission android:name="android.permission.ACCESS_NETWORK_STATE"/>}</p>
-     *
-     * @return NetworkInfo
-     */
-    private static NetworkInfo getActiveNetworkInfo(Context context) {
-        ConnectivityManager cm = (ConnectivityManager) context
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-        return cm.getActiveNetworkInfo();
-    }
-
     /**
      * 判断移动数据是否可用(2G, 3G或者4G)
      * <p>需添加权限 {@code <uses-permission android:name="android.permission.ACCESS_WIFI_STATE"/>}</p>
@@ -81,8 +69,17 @@ public class NetWorkUtils {
      * </ul>
      */
     public static NetworkType getNetworkType(Context context) {
+        return NetworkMonitor.getInstance(context).getSnapshot().getType();
+    }
+
+    /**
+     * Classify the active network
+     *
+     * @param info active network info, null if there is none
+     * @return network type
+     */
+    static NetworkType classify(NetworkInfo info) {
         NetworkType netType = NetworkType.NETWORK_NO;
-        NetworkInfo info = getActiveNetworkInfo(context);
         if (info != null && info.isAvailable()) {
 
             if (info.getType() == ConnectivityManager.TYPE_WIFI) {
@@ -137,4 +134,4 @@ public class NetWorkUtils {
         return netType;
     }
 
-}
\ No newline at end of file
+}
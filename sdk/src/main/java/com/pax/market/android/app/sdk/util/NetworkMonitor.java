@@ -0,0 +1,183 @@
+package com.pax.market.android.app.sdk.util;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+
+/**
+ * Keep the state of the active network up to date.
+ * <p>
+ * Connectivity changes are listened once per process, and every change publishes a new
+ * {@link NetworkSnapshot}. Reading the state is a plain volatile read, no binder call is made on
+ * the caller's thread.
+ * <p>需添加权限 {@code <uses-permission android:name="android.permission.ACCESS_NETWORK_STATE"/>}</p>
+ */
+public class NetworkMonitor {
+    private static final String TAG = NetworkMonitor.class.getSimpleName();
+
+    private static volatile NetworkMonitor instance;
+
+    private final ConnectivityManager connectivityManager;
+    private volatile NetworkSnapshot snapshot;
+    /**
+     * False if the changes can not be listened, then every lookup queries the system
+     */
+    private final boolean listening;
+
+    private NetworkMonitor(Context context) {
+        Context appContext = context.getApplicationContext();
+        connectivityManager = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        refresh();
+        listening = register(appContext);
+    }
+
+    public static NetworkMonitor getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NetworkMonitor.class) {
+                if (instance == null) {
+                    instance = new NetworkMonitor(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return the latest state of the active network, never null
+     */
+    public NetworkSnapshot getSnapshot() {
+        if (!listening) {
+            refresh();
+        }
+        return snapshot;
+    }
+
+    private boolean register(Context context) {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                connectivityManager.registerDefaultNetworkCallback(new RefreshCallback());
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                connectivityManager.registerNetworkCallback(new NetworkRequest.Builder()
+                        .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build(), new RefreshCallback());
+            } else {
+                context.registerReceiver(new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        refresh();
+                    }
+                }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            }
+            return true;
+        } catch (RuntimeException e) {
+            SdkLog.e(TAG, "Listen to network changes failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Query the system and publish a new snapshot.
+     */
+    private void refresh() {
+        NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+        NetWorkUtils.NetworkType type = NetWorkUtils.classify(info);
+        boolean validated = info != null && info.isConnected();
+        int bandwidth = NetworkSnapshot.BANDWIDTH_UNKNOWN;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Network network = connectivityManager.getActiveNetwork();
+            NetworkCapabilities capabilities = network == null ? null : connectivityManager.getNetworkCapabilities(network);
+            if (capabilities != null) {
+                validated = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+                bandwidth = capabilities.getLinkDownstreamBandwidthKbps();
+            }
+        }
+        snapshot = new NetworkSnapshot(type, connectivityManager.isActiveNetworkMetered(), validated, bandwidth);
+    }
+
+    /**
+     * Publish a snapshot of the given network from the capabilities the system passed along.
+     * <p>
+     * Capabilities tell the transport but not the mobile generation, so a cellular network is
+     * classified from its NetworkInfo, the whole state is queried again if that is gone already.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void publish(Network network, NetworkCapabilities capabilities) {
+        NetWorkUtils.NetworkType type;
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            type = NetWorkUtils.NetworkType.NETWORK_WIFI;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            type = NetWorkUtils.NetworkType.NETWORK_ETHERNET;
+        } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            NetworkInfo info = connectivityManager.getNetworkInfo(network);
+            if (info == null) {
+                refresh();
+                return;
+            }
+            type = NetWorkUtils.classify(info);
+        } else {
+            type = NetWorkUtils.NetworkType.NETWORK_UNKNOWN;
+        }
+        boolean validated = Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+                || capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        snapshot = new NetworkSnapshot(type, metered, validated, capabilities.getLinkDownstreamBandwidthKbps());
+    }
+
+    /**
+     * Follow the default network, the snapshot is built from the callback arguments.
+     * <p>
+     * Below Android 7.0 the callback reports every network with internet, not only the default
+     * one, so each report queries the active network instead.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private class RefreshCallback extends ConnectivityManager.NetworkCallback {
+        private final boolean defaultOnly = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+        private volatile Network tracked;
+
+        @Override
+        public void onAvailable(Network network) {
+            if (!defaultOnly) {
+                refresh();
+                return;
+            }
+            tracked = network;
+            // Android 8.0 and above always follow with onCapabilitiesChanged, older releases may not
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+                NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+                if (capabilities != null) {
+                    publish(network, capabilities);
+                }
+            }
+        }
+
+        @Override
+        public void onLost(Network network) {
+            if (!defaultOnly) {
+                refresh();
+                return;
+            }
+            if (network.equals(tracked)) {
+                tracked = null;
+                snapshot = new NetworkSnapshot(NetWorkUtils.NetworkType.NETWORK_NO, false, false,
+                        NetworkSnapshot.BANDWIDTH_UNKNOWN);
+            }
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+            if (!defaultOnly) {
+                refresh();
+                return;
+            }
+            tracked = network;
+            publish(network, networkCapabilities);
+        }
+    }
+}
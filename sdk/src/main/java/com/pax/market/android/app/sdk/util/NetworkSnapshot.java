@@ -0,0 +1,59 @@
+package com.pax.market.android.app.sdk.util;
+
+/**
+ * Immutable state of the active network, published by {@link NetworkMonitor}.
+ */
+public final class NetworkSnapshot {
+    public static final int BANDWIDTH_UNKNOWN = -1;
+
+    private final NetWorkUtils.NetworkType type;
+    private final boolean metered;
+    private final boolean validated;
+    private final int downstreamBandwidthKbps;
+
+    NetworkSnapshot(NetWorkUtils.NetworkType type, boolean metered, boolean validated, int downstreamBandwidthKbps) {
+        this.type = type;
+        this.metered = metered;
+        this.validated = validated;
+        this.downstreamBandwidthKbps = downstreamBandwidthKbps;
+    }
+
+    public NetWorkUtils.NetworkType getType() {
+        return type;
+    }
+
+    public boolean isConnected() {
+        return type != NetWorkUtils.NetworkType.NETWORK_NO;
+    }
+
+    /**
+     * @return true if the user may be charged for the traffic
+     */
+    public boolean isMetered() {
+        return metered;
+    }
+
+    /**
+     * @return true if the network has been validated to reach the internet, same as connected below Android 6.0
+     */
+    public boolean isValidated() {
+        return validated;
+    }
+
+    /**
+     * @return estimated downstream bandwidth in kbps, {@link #BANDWIDTH_UNKNOWN} if not known
+     */
+    public int getDownstreamBandwidthKbps() {
+        return downstreamBandwidthKbps;
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkSnapshot{" +
+                "type=" + type +
+                ", metered=" + metered +
+                ", validated=" + validated +
+                ", downstreamBandwidthKbps=" + downstreamBandwidthKbps +
+                '}';
+    }
+}
@@ -15,7 +15,6 @@ package com.pax.market.android.app.sdk.util;
 import android.content.Context;
 import android.content.SharedPreferences;
 
-import com.google.gson.Gson;
 
 /**
  * sp tools
@@ -40,7 +39,7 @@ public class PreferencesUtils {
         SharedPreferences settings = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = settings.edit();
         editor.putString(key, value);
-        return editor.commit();
+        return commit(editor);
     }
 
     /**
@@ -66,8 +65,11 @@ public class PreferencesUtils {
      *         this name that is not a string
      */
     public static String getString(Context context, String key, String defaultValue) {
+        long start = SdkTracer.begin();
         SharedPreferences settings = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
-        return settings.getString(key, defaultValue);
+        String value = settings.getString(key, defaultValue);
+        SdkTracer.end(SdkTracer.SP_READ, start);
+        return value;
     }
 
     /**
@@ -82,7 +84,7 @@ public class PreferencesUtils {
         SharedPreferences settings = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = settings.edit();
         editor.putInt(key, value);
-        return editor.commit();
+        return commit(editor);
     }
 
     /**
@@ -124,7 +126,7 @@ public class PreferencesUtils {
         SharedPreferences settings = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = settings.edit();
         editor.putLong(key, value);
-        return editor.commit();
+        return commit(editor);
     }
 
     /**
@@ -166,7 +168,7 @@ public class PreferencesUtils {
         SharedPreferences settings = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = settings.edit();
         editor.putFloat(key, value);
-        return editor.commit();
+        return commit(editor);
     }
 
     /**
@@ -208,7 +210,7 @@ public class PreferencesUtils {
         SharedPreferences settings = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = settings.edit();
         editor.putBoolean(key, value);
-        return editor.commit();
+        return commit(editor);
     }
 
     /**
@@ -247,8 +249,7 @@ public class PreferencesUtils {
      * @return True if the new values were successfully written to persistent storage.
      */
     public static boolean putObject(Context context, String key, Object value) {
-        Gson gson = new Gson();
-        String jsonValue = gson.toJson(value);
+        String jsonValue = SdkJson.toJson(value);
         return putString(context, key, jsonValue);
     }
 
@@ -264,7 +265,7 @@ public class PreferencesUtils {
      */
     public static <T> T getObject(Context context, String key, Class<T> classOfT) {
         String jsonValue = getString(context, key);
-        return new Gson().fromJson(jsonValue, classOfT);
+        return SdkJson.fromJson(jsonValue, classOfT);
     }
 
     /**
@@ -277,7 +278,7 @@ public class PreferencesUtils {
     public static boolean remove(Context context, String key){
         SharedPreferences settings = context.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = settings.edit();
-        return editor.remove(key).commit();
+        return commit(editor.remove(key));
     }
 
 
@@ -286,6 +287,14 @@ public class PreferencesUtils {
         SharedPreferences.Editor editor = preferences.edit();
         editor.clear();
 
-        editor.commit();
+        commit(editor);
+    }
+
+    private static boolean commit(SharedPreferences.Editor editor) {
+        long start = SdkMetrics.start();
+        boolean result = editor.commit();
+        SdkMetrics.stop(SdkMetrics.Timer.PREFERENCES_COMMIT, start);
+        SdkTracer.end(SdkTracer.SP_COMMIT, start);
+        return result;
     }
 }
@@ -0,0 +1,439 @@
+package com.pax.market.android.app.sdk.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.pax.market.android.app.sdk.dto.DcUrlInfo;
+import com.pax.market.android.app.sdk.dto.LocationInfo;
+import com.pax.market.android.app.sdk.dto.MediaMesageInfo;
+import com.pax.market.android.app.sdk.dto.StoreProxyInfo;
+import com.pax.market.android.app.sdk.dto.TerminalInfo;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * JSON of the SDK, one Gson instance shared by all the SDK classes.
+ * <p>
+ * The DTOs read and written on hot paths have hand-written streaming adapters, so they are
+ * converted without reflection. They produce the same JSON as Gson reflection did, so the values
+ * already saved in SharedPreferences still read. Other classes fall back to Gson reflection.
+ */
+public class SdkJson {
+
+    private SdkJson() {
+        throw new AssertionError();
+    }
+
+    private static class Holder {
+        static final Gson GSON = new GsonBuilder()
+                .registerTypeAdapter(DcUrlInfo.class, new DcUrlInfoAdapter().nullSafe())
+                .registerTypeAdapter(MediaMesageInfo.class, new MediaMesageInfoAdapter().nullSafe())
+                .registerTypeAdapter(LocationInfo.class, new LocationInfoAdapter().nullSafe())
+                .registerTypeAdapter(TerminalInfo.class, new TerminalInfoAdapter().nullSafe())
+                .registerTypeAdapter(StoreProxyInfo.class, new StoreProxyInfoAdapter().nullSafe())
+                .create();
+    }
+
+    /**
+     * @return shared Gson, thread safe
+     */
+    public static Gson gson() {
+        return Holder.GSON;
+    }
+
+    public static String toJson(Object value) {
+        return Holder.GSON.toJson(value);
+    }
+
+    /**
+     * @param json
+     * @param classOfT
+     * @return null if json is null
+     * @throws com.google.gson.JsonSyntaxException if json is malformed
+     */
+    public static <T> T fromJson(String json, Class<T> classOfT) {
+        return Holder.GSON.fromJson(json, classOfT);
+    }
+
+    public static <T> T fromJson(String json, Type typeOfT) {
+        return Holder.GSON.fromJson(json, typeOfT);
+    }
+
+    private static class DcUrlInfoAdapter extends TypeAdapter<DcUrlInfo> {
+        @Override
+        public void write(JsonWriter out, DcUrlInfo value) throws IOException {
+            out.beginObject();
+            out.name("dcUrl").value(value.getDcUrl());
+            out.name("lastAccessTime").value(value.getLastAccessTime());
+            out.name("businessCode").value(value.getBusinessCode());
+            out.name("message").value(value.getMessage());
+            out.name("staticUrl").value(value.getStaticUrl());
+            out.endObject();
+        }
+
+        @Override
+        public DcUrlInfo read(JsonReader in) throws IOException {
+            DcUrlInfo value = new DcUrlInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("dcUrl".equals(name)) {
+                    value.setDcUrl(nextString(in));
+                } else if ("lastAccessTime".equals(name)) {
+                    Long lastAccessTime = nextLong(in);
+                    if (lastAccessTime != null) {
+                        value.setLastAccessTime(lastAccessTime);
+                    }
+                } else if ("businessCode".equals(name)) {
+                    Integer businessCode = nextInt(in);
+                    if (businessCode != null) {
+                        value.setBusinessCode(businessCode);
+                    }
+                } else if ("message".equals(name)) {
+                    value.setMessage(nextString(in));
+                } else if ("staticUrl".equals(name)) {
+                    value.setStaticUrl(nextString(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    /**
+     * countDownTimer is runtime state, it is neither written nor read.
+     */
+    private static class MediaMesageInfoAdapter extends TypeAdapter<MediaMesageInfo> {
+        @Override
+        public void write(JsonWriter out, MediaMesageInfo value) throws IOException {
+            out.beginObject();
+            out.name("savedPath").value(value.getSavedPath());
+            out.name("template").value(value.getTemplate());
+            out.name("linkUrl").value(value.getLinkUrl());
+            out.name("showSkipButton").value(value.getShowSkipButton());
+            out.name("countDownTime").value(value.getCountDownTime());
+            out.name("imgUrl").value(value.getImgUrl());
+            out.name("linkTextColor").value(value.getLinkTextColor());
+            out.name("linkTextBgColor").value(value.getLinkTextBgColor());
+            out.name("linkText").value(value.getLinkText());
+            out.name("skipButtonText").value(value.getSkipButtonText());
+            out.name("showLink").value(value.isShowLink());
+            out.name("title").value(value.getTitle());
+            out.name("titleColor").value(value.getTitleColor());
+            out.name("startTime").value(value.getStartTime());
+            out.name("endTime").value(value.getEndTime());
+            out.name("priority").value(value.getPriority());
+            out.name("receivedTime").value(value.getReceivedTime());
+            out.endObject();
+        }
+
+        @Override
+        public MediaMesageInfo read(JsonReader in) throws IOException {
+            MediaMesageInfo value = new MediaMesageInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                switch (name) {
+                    case "savedPath":
+                        value.setSavedPath(nextString(in));
+                        break;
+                    case "template": {
+                        Integer template = nextInt(in);
+                        if (template != null) {
+                            value.setTemplate(template);
+                        }
+                        break;
+                    }
+                    case "linkUrl":
+                        value.setLinkUrl(nextString(in));
+                        break;
+                    case "showSkipButton": {
+                        Boolean showSkipButton = nextBoolean(in);
+                        if (showSkipButton != null) {
+                            value.setShowSkipButton(showSkipButton);
+                        }
+                        break;
+                    }
+                    case "countDownTime":
+                        value.setCountDownTime(nextInt(in));
+                        break;
+                    case "imgUrl":
+                        value.setImgUrl(nextString(in));
+                        break;
+                    case "linkTextColor":
+                        value.setLinkTextColor(nextString(in));
+                        break;
+                    case "linkTextBgColor":
+                        value.setLinkTextBgColor(nextString(in));
+                        break;
+                    case "linkText":
+                        value.setLinkText(nextString(in));
+                        break;
+                    case "skipButtonText":
+                        value.setSkipButtonText(nextString(in));
+                        break;
+                    case "showLink": {
+                        Boolean showLink = nextBoolean(in);
+                        if (showLink != null) {
+                            value.setShowLink(showLink);
+                        }
+                        break;
+                    }
+                    case "title":
+                        value.setTitle(nextString(in));
+                        break;
+                    case "titleColor":
+                        value.setTitleColor(nextString(in));
+                        break;
+                    case "startTime":
+                        value.setStartTime(nextLong(in));
+                        break;
+                    case "endTime":
+                        value.setEndTime(nextLong(in));
+                        break;
+                    case "priority": {
+                        Integer priority = nextInt(in);
+                        if (priority != null) {
+                            value.setPriority(priority);
+                        }
+                        break;
+                    }
+                    case "receivedTime": {
+                        Long receivedTime = nextLong(in);
+                        if (receivedTime != null) {
+                            value.setReceivedTime(receivedTime);
+                        }
+                        break;
+                    }
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static class LocationInfoAdapter extends TypeAdapter<LocationInfo> {
+        @Override
+        public void write(JsonWriter out, LocationInfo value) throws IOException {
+            out.beginObject();
+            out.name("longitude").value(value.getLongitude());
+            out.name("latitude").value(value.getLatitude());
+            out.name("accuracy").value(value.getAccuracy());
+            out.name("lastLocateTime").value(value.getLastLocateTime());
+            out.name("businessCode").value(value.getBusinessCode());
+            out.name("message").value(value.getMessage());
+            out.endObject();
+        }
+
+        @Override
+        public LocationInfo read(JsonReader in) throws IOException {
+            LocationInfo value = new LocationInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("longitude".equals(name)) {
+                    value.setLongitude(nextString(in));
+                } else if ("latitude".equals(name)) {
+                    value.setLatitude(nextString(in));
+                } else if ("accuracy".equals(name)) {
+                    value.setAccuracy(nextString(in));
+                } else if ("lastLocateTime".equals(name)) {
+                    value.setLastLocateTime(nextLong(in));
+                } else if ("businessCode".equals(name)) {
+                    Integer businessCode = nextInt(in);
+                    if (businessCode != null) {
+                        value.setBusinessCode(businessCode);
+                    }
+                } else if ("message".equals(name)) {
+                    value.setMessage(nextString(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static class TerminalInfoAdapter extends TypeAdapter<TerminalInfo> {
+        @Override
+        public void write(JsonWriter out, TerminalInfo value) throws IOException {
+            out.beginObject();
+            out.name("bussinessCode").value(value.getBussinessCode());
+            out.name("message").value(value.getMessage());
+            out.name("tid").value(value.getTid());
+            out.name("terminalName").value(value.getTerminalName());
+            out.name("serialNo").value(value.getSerialNo());
+            out.name("modelName").value(value.getModelName());
+            out.name("factoryName").value(value.getFactoryName());
+            out.name("merchantName").value(value.getMerchantName());
+            out.name("statusCode").value(value.getStatusCode());
+            out.endObject();
+        }
+
+        @Override
+        public TerminalInfo read(JsonReader in) throws IOException {
+            TerminalInfo value = new TerminalInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("bussinessCode".equals(name)) {
+                    Integer businessCode = nextInt(in);
+                    if (businessCode != null) {
+                        value.setBussinessCode(businessCode);
+                    }
+                } else if ("message".equals(name)) {
+                    value.setMessage(nextString(in));
+                } else if ("tid".equals(name)) {
+                    value.setTid(nextString(in));
+                } else if ("terminalName".equals(name)) {
+                    value.setTerminalName(nextString(in));
+                } else if ("serialNo".equals(name)) {
+                    value.setSerialNo(nextString(in));
+                } else if ("modelName".equals(name)) {
+                    value.setModelName(nextString(in));
+                } else if ("factoryName".equals(name)) {
+                    value.setFactoryName(nextString(in));
+                } else if ("merchantName".equals(name)) {
+                    value.setMerchantName(nextString(in));
+                } else if ("statusCode".equals(name)) {
+                    Integer statusCode = nextInt(in);
+                    if (statusCode != null) {
+                        value.setStatusCode(statusCode);
+                    }
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    /**
+     * The password is written as an array of one char strings, as Gson does for char[].
+     */
+    private static class StoreProxyInfoAdapter extends TypeAdapter<StoreProxyInfo> {
+        @Override
+        public void write(JsonWriter out, StoreProxyInfo value) throws IOException {
+            out.beginObject();
+            out.name("type").value(value.getType());
+            out.name("host").value(value.getHost());
+            out.name("port").value(value.getPort());
+            out.name("authorization").value(value.getAuthorization());
+            out.name("username").value(value.getUsername());
+            char[] password = value.getPassword();
+            if (password != null) {
+                out.name("password").beginArray();
+                for (char c : password) {
+                    out.value(String.valueOf(c));
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public StoreProxyInfo read(JsonReader in) throws IOException {
+            StoreProxyInfo value = new StoreProxyInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("type".equals(name)) {
+                    Integer type = nextInt(in);
+                    if (type != null) {
+                        value.setType(type);
+                    }
+                } else if ("host".equals(name)) {
+                    value.setHost(nextString(in));
+                } else if ("port".equals(name)) {
+                    Integer port = nextInt(in);
+                    if (port != null) {
+                        value.setPort(port);
+                    }
+                } else if ("authorization".equals(name)) {
+                    value.setAuthorization(nextString(in));
+                } else if ("username".equals(name)) {
+                    value.setUsername(nextString(in));
+                } else if ("password".equals(name)) {
+                    value.setPassword(nextChars(in));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static Long nextLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextLong();
+    }
+
+    private static Integer nextInt(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+
+    /**
+     * Accepts "true" and "false" strings too, as Gson does.
+     */
+    private static Boolean nextBoolean(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    /**
+     * Array of one char strings, or a plain string.
+     */
+    private static char[] nextChars(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token != JsonToken.BEGIN_ARRAY) {
+            return in.nextString().toCharArray();
+        }
+        StringBuilder chars = new StringBuilder();
+        in.beginArray();
+        while (in.hasNext()) {
+            chars.append(in.nextString());
+        }
+        in.endArray();
+        char[] result = new char[chars.length()];
+        chars.getChars(0, chars.length(), result, 0);
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+package com.pax.market.android.app.sdk.util;
+
+import android.util.Log;
+
+/**
+ * Logging of the SDK.
+ * <p>
+ * A message is only built when its level is logged: the fixed-arity methods format their {}
+ * placeholders after the level check, so a call below the level allocates nothing, and a
+ * {@link Message} builds an expensive message lazily. Verbose logs are compiled out unless
+ * {@link #VERBOSE} is true.
+ */
+public class SdkLog {
+    /**
+     * Compile-time switch of verbose logs, javac drops {@code if (SdkLog.VERBOSE)} blocks when false
+     */
+    public static final boolean VERBOSE = false;
+
+    private static volatile int level = Log.INFO;
+
+    /**
+     * Message built only if it is logged.
+     */
+    public interface Message {
+        String build();
+    }
+
+    private SdkLog() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param level lowest level logged, e.g. {@link Log#DEBUG}. Default is {@link Log#INFO}
+     */
+    public static void setLevel(int level) {
+        SdkLog.level = level;
+    }
+
+    public static boolean isLoggable(int priority) {
+        return priority >= level;
+    }
+
+    public static void v(String tag, String msg) {
+        if (VERBOSE && isLoggable(Log.VERBOSE)) {
+            Log.v(tag, msg);
+        }
+    }
+
+    public static void v(String tag, Message msg) {
+        if (VERBOSE && isLoggable(Log.VERBOSE)) {
+            Log.v(tag, msg.build());
+        }
+    }
+
+    public static void d(String tag, String msg) {
+        if (isLoggable(Log.DEBUG)) {
+            Log.d(tag, msg);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg) {
+        if (isLoggable(Log.DEBUG)) {
+            Log.d(tag, format(format, arg, null));
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.DEBUG)) {
+            Log.d(tag, format(format, arg1, arg2));
+        }
+    }
+
+    public static void d(String tag, Message msg) {
+        if (isLoggable(Log.DEBUG)) {
+            Log.d(tag, msg.build());
+        }
+    }
+
+    public static void i(String tag, String msg) {
+        if (isLoggable(Log.INFO)) {
+            Log.i(tag, msg);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg) {
+        if (isLoggable(Log.INFO)) {
+            Log.i(tag, format(format, arg, null));
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.INFO)) {
+            Log.i(tag, format(format, arg1, arg2));
+        }
+    }
+
+    public static void w(String tag, String msg) {
+        if (isLoggable(Log.WARN)) {
+            Log.w(tag, msg);
+        }
+    }
+
+    public static void w(String tag, String format, Object arg) {
+        if (isLoggable(Log.WARN)) {
+            Log.w(tag, format(format, arg, null));
+        }
+    }
+
+    public static void w(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.WARN)) {
+            Log.w(tag, format(format, arg1, arg2));
+        }
+    }
+
+    public static void w(String tag, String msg, Throwable tr) {
+        if (isLoggable(Log.WARN)) {
+            Log.w(tag, msg, tr);
+        }
+    }
+
+    public static void e(String tag, String msg) {
+        if (isLoggable(Log.ERROR)) {
+            Log.e(tag, msg);
+        }
+    }
+
+    public static void e(String tag, String format, Object arg) {
+        if (isLoggable(Log.ERROR)) {
+            Log.e(tag, format(format, arg, null));
+        }
+    }
+
+    public static void e(String tag, String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.ERROR)) {
+            Log.e(tag, format(format, arg1, arg2));
+        }
+    }
+
+    public static void e(String tag, String msg, Throwable tr) {
+        if (isLoggable(Log.ERROR)) {
+            Log.e(tag, msg, tr);
+        }
+    }
+
+    /**
+     * Replace the first two {} of format with arg1 and arg2.
+     */
+    static String format(String format, Object arg1, Object arg2) {
+        StringBuilder builder = new StringBuilder(format.length() + 32);
+        int from = 0;
+        int index = 0;
+        int at;
+        while (index < 2 && (at = format.indexOf("{}", from)) >= 0) {
+            builder.append(format, from, at).append(index == 0 ? arg1 : arg2);
+            from = at + 2;
+            index++;
+        }
+        return builder.append(format, from, format.length()).toString();
+    }
+}
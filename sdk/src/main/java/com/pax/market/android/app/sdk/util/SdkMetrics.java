@@ -0,0 +1,407 @@
+package com.pax.market.android.app.sdk.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and volume figures of the SDK.
+ * <p>
+ * All the metrics are registered up front, so recording one is a few atomic adds on preallocated
+ * arrays and allocates nothing. Counters are striped by thread to keep threads off the same cache
+ * line, timers are log-linear histograms with 8 sub-buckets per power of two (about 12% precision).
+ * <p>
+ * Read the figures with {@link #snapshot()}, or get every record with {@link #setListener(Listener)}.
+ */
+public class SdkMetrics {
+
+    public enum Timer {
+        /**
+         * From bindService to onServiceConnected of PAXSTORE API url service
+         */
+        BIND_API_URL_SERVICE,
+        /**
+         * From bindService to onServiceConnected of PAXSTORE remote SDK service
+         */
+        BIND_REMOTE_SDK_SERVICE,
+        /**
+         * DC url asked from PAXSTORE, answers from the local cache are not timed
+         */
+        DC_URL_RESOLVE,
+        /**
+         * Body of a parameter download, see {@link Counter#PARAM_DOWNLOAD_BYTES} for the bytes
+         */
+        PARAM_DOWNLOAD,
+        /**
+         * From a cloud message arriving to it being handled
+         */
+        CLOUD_MESSAGE,
+        /**
+         * SharedPreferences commit of the SDK
+         */
+        PREFERENCES_COMMIT,
+        /**
+         * Write of the SDK state file, see {@link SdkStateStore}
+         */
+        STATE_STORE_WRITE
+    }
+
+    public enum Counter {
+        /**
+         * DC url served from the local cache without asking PAXSTORE
+         */
+        DC_URL_CACHE_HIT,
+        /**
+         * DC url not cached or expired, asked from PAXSTORE
+         */
+        DC_URL_CACHE_MISS,
+        PARAM_DOWNLOAD_BYTES,
+        CLOUD_MESSAGE_RECEIVED
+    }
+
+    public enum Gauge {
+        /**
+         * Cloud messages received but not handled yet
+         */
+        CLOUD_MESSAGE_QUEUE_DEPTH
+    }
+
+    /**
+     * Called on the recording thread, keep it short.
+     */
+    public interface Listener {
+        void onTimer(Timer timer, long nanos);
+
+        void onCount(Counter counter, long delta);
+
+        void onGauge(Gauge gauge, long value);
+    }
+
+    private static final Histogram[] timers = new Histogram[Timer.values().length];
+    private static final StripedCounter[] counters = new StripedCounter[Counter.values().length];
+    private static final AtomicLongArray gauges = new AtomicLongArray(Gauge.values().length);
+    private static volatile Listener listener;
+
+    static {
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new Histogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new StripedCounter();
+        }
+    }
+
+    private SdkMetrics() {
+        throw new AssertionError();
+    }
+
+    public static void setListener(Listener listener) {
+        SdkMetrics.listener = listener;
+    }
+
+    /**
+     * @return start time to pass to {@link #stop(Timer, long)}
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time passed since start.
+     *
+     * @param timer
+     * @param start returned by {@link #start()}
+     */
+    public static void stop(Timer timer, long start) {
+        record(timer, System.nanoTime() - start);
+    }
+
+    public static void record(Timer timer, long nanos) {
+        timers[timer.ordinal()].record(nanos);
+        Listener current = listener;
+        if (current != null) {
+            current.onTimer(timer, nanos);
+        }
+    }
+
+    public static void increment(Counter counter) {
+        add(counter, 1);
+    }
+
+    public static void add(Counter counter, long delta) {
+        counters[counter.ordinal()].add(delta);
+        Listener current = listener;
+        if (current != null) {
+            current.onCount(counter, delta);
+        }
+    }
+
+    /**
+     * @return the gauge after adding delta
+     */
+    public static long addGauge(Gauge gauge, long delta) {
+        long value = gauges.addAndGet(gauge.ordinal(), delta);
+        Listener current = listener;
+        if (current != null) {
+            current.onGauge(gauge, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return figures recorded so far
+     */
+    public static Snapshot snapshot() {
+        Map<Timer, TimerSnapshot> timerSnapshots = new EnumMap<>(Timer.class);
+        for (Timer timer : Timer.values()) {
+            timerSnapshots.put(timer, timers[timer.ordinal()].snapshot());
+        }
+        Map<Counter, Long> counterValues = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            counterValues.put(counter, counters[counter.ordinal()].sum());
+        }
+        Map<Gauge, Long> gaugeValues = new EnumMap<>(Gauge.class);
+        for (Gauge gauge : Gauge.values()) {
+            gaugeValues.put(gauge, gauges.get(gauge.ordinal()));
+        }
+        return new Snapshot(timerSnapshots, counterValues, gaugeValues);
+    }
+
+    /**
+     * Clear the timers and counters, gauges are kept as they follow live state.
+     */
+    public static void reset() {
+        for (Histogram timer : timers) {
+            timer.reset();
+        }
+        for (StripedCounter counter : counters) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Counter split over several cells, a thread adds to the cell of its id.
+     */
+    private static class StripedCounter {
+        private static final int STRIPES = 8;
+        /**
+         * Cells are 8 longs apart, so two cells never share a 64 byte cache line
+         */
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+        void add(long delta) {
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+            cells.addAndGet(stripe * PADDING, delta);
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * PADDING);
+            }
+            return sum;
+        }
+
+        void reset() {
+            for (int i = 0; i < STRIPES; i++) {
+                cells.set(i * PADDING, 0);
+            }
+        }
+    }
+
+    /**
+     * Log-linear histogram of microseconds: values below 16 have a bucket each, above that every
+     * power of two is split into 8 buckets.
+     */
+    private static class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+        /**
+         * Up to 2^40 us, about 12 days
+         */
+        private static final int MAX_EXPONENT = 40;
+        private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            buckets.incrementAndGet(indexOf(micros));
+            sum.addAndGet(micros);
+            long current;
+            while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+                // retry
+            }
+        }
+
+        static int indexOf(long micros) {
+            if (micros < LINEAR_LIMIT) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            if (exponent >= MAX_EXPONENT) {
+                return BUCKETS - 1;
+            }
+            int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * @return highest value of the bucket
+         */
+        static long valueOf(int index) {
+            if (index < LINEAR_LIMIT) {
+                return index;
+            }
+            int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+            int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            return (1L << exponent) + (subBucket + 1) * width - 1;
+        }
+
+        TimerSnapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            return new TimerSnapshot(total, sum.get(), max.get(),
+                    percentile(counts, total, 0.5), percentile(counts, total, 0.9), percentile(counts, total, 0.99));
+        }
+
+        private static long percentile(long[] counts, long total, double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return valueOf(i);
+                }
+            }
+            return valueOf(counts.length - 1);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            sum.set(0);
+            max.set(0);
+        }
+    }
+
+    /**
+     * Figures of a timer, in microseconds.
+     */
+    public static class TimerSnapshot {
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+
+        TimerSnapshot(long count, long totalMicros, long maxMicros, long p50Micros, long p90Micros, long p99Micros) {
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", mean=" + getMeanMicros() + "us, p50=" + p50Micros + "us, p90=" + p90Micros
+                    + "us, p99=" + p99Micros + "us, max=" + maxMicros + "us}";
+        }
+    }
+
+    public static class Snapshot {
+        private final Map<Timer, TimerSnapshot> timers;
+        private final Map<Counter, Long> counters;
+        private final Map<Gauge, Long> gauges;
+
+        Snapshot(Map<Timer, TimerSnapshot> timers, Map<Counter, Long> counters, Map<Gauge, Long> gauges) {
+            this.timers = timers;
+            this.counters = counters;
+            this.gauges = gauges;
+        }
+
+        public TimerSnapshot getTimer(Timer timer) {
+            return timers.get(timer);
+        }
+
+        public long getCount(Counter counter) {
+            return counters.get(counter);
+        }
+
+        public long getGauge(Gauge gauge) {
+            return gauges.get(gauge);
+        }
+
+        /**
+         * @return share of the DC url lookups served from cache, 0 if there was none
+         */
+        public double getDcUrlCacheHitRatio() {
+            long hit = getCount(Counter.DC_URL_CACHE_HIT);
+            long total = hit + getCount(Counter.DC_URL_CACHE_MISS);
+            return total == 0 ? 0 : (double) hit / total;
+        }
+
+        /**
+         * @return bytes per second of parameter downloads, 0 if there was none
+         */
+        public long getParamDownloadThroughput() {
+            long micros = getTimer(Timer.PARAM_DOWNLOAD).getTotalMicros();
+            return micros == 0 ? 0 : getCount(Counter.PARAM_DOWNLOAD_BYTES) * 1000_000 / micros;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "timers=" + timers +
+                    ", counters=" + counters +
+                    ", gauges=" + gauges +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package com.pax.market.android.app.sdk.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.pax.market.android.app.sdk.CommonConstants;
+import com.pax.market.android.app.sdk.PushConstants;
+import com.pax.market.android.app.sdk.dto.DcUrlInfo;
+import com.pax.market.android.app.sdk.dto.StoreProxyInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * State the SDK keeps across restarts, in one memory mapped, versioned binary file instead of
+ * JSON strings in SharedPreferences.
+ * <p>
+ * Fixed size state, the rate limit timestamps, is kept in fixed records. Every record has two
+ * copies stamped with a sequence number and a CRC, a write goes to the older copy, so a write torn
+ * by a crash leaves the newer one readable. Variable state, the DC url, proxy settings, download
+ * journal and trigger, media playlist and media cache validators, is appended to a log of CRC
+ * checked entries where the last entry of a key wins. When the log is full, or a torn entry is found at its end, the live state is written
+ * to a new file which is renamed over the old one.
+ * <p>
+ * The file is read once when opened, reads are served from memory afterwards and a write only
+ * touches the changed record or appends one entry. The state saved in SharedPreferences by former
+ * versions is moved in when the file is created. If the file can not be used, the state is kept
+ * in memory for the process lifetime.
+ * <pre>
+ * file    := header, SLOT_COUNT * 2 records, log
+ * header  := magic, version, slot count, reserved      (4 ints)
+ * record  := seq, value, crc(seq, value), padding      (2 longs, 2 ints), seq 0 if never written
+ * log     := entry*, zeros
+ * entry   := body length, crc(body), body              (body length 0 ends the log)
+ * body    := op, key length, key, value                (byte, short, UTF-8, bytes)
+ * </pre>
+ */
+public class SdkStateStore {
+    private static final String TAG = SdkStateStore.class.getSimpleName();
+
+    public static final String FILE_NAME = "paxstore_sdk.state";
+
+    public static final int SLOT_LAST_GET_TERMINAL_INFO_TIME = 0;
+    public static final int SLOT_LAST_GET_ONLINE_STATUS_TIME = 1;
+    public static final int SLOT_LAST_GET_LOCATION_TIME = 2;
+    /**
+     * Fixed records in the file, the unused ones are room for new state without a format change
+     */
+    private static final int SLOT_COUNT = 16;
+
+    private static final String KEY_DC_URL_INFO = CommonConstants.SP_LAST_GET_DCURL_TIME;
+    private static final String KEY_STORE_PROXY_INFO = "store_proxy_info";
+
+    /**
+     * The file and keys the proxy settings were saved to by former versions
+     */
+    private static final String LEGACY_CFG_NAME = "store.sdk.cfg";
+    private static final String LEGACY_PROXY_TYPE = "proxyType";
+    private static final String LEGACY_PROXY_HOST = "proxyHost";
+    private static final String LEGACY_PROXY_PORT = "proxyPort";
+    private static final String LEGACY_PROXY_AUTH = "proxyAuthorization";
+    private static final String LEGACY_PROXY_USER = "proxyUsername";
+    private static final String LEGACY_PROXY_PASS = "proxyPassword";
+    /**
+     * String preferences moved into the log as they are, under the same keys, together with the
+     * ones named by {@link #LEGACY_STRING_PREFIXES}
+     */
+    private static final String[] LEGACY_STRINGS = {
+            CommonConstants.SP_DOWNLOAD_JOURNAL,
+            CommonConstants.SP_LEGACY_LAST_DOWNLOAD,
+            PushConstants.MEDIA_PLAYLIST,
+            PushConstants.MEDIA_MESSAGE
+    };
+    private static final String[] LEGACY_STRING_PREFIXES = {
+            CommonConstants.SP_MEDIA_CACHE_INFO + "_"
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x50585353; // "PXSS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 24;
+    private static final int LOG_START = HEADER_SIZE + SLOT_COUNT * 2 * RECORD_SIZE;
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final int INITIAL_SIZE = 16 * 1024;
+    private static final int MAX_SIZE = 4 * 1024 * 1024;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    /**
+     * Version of the binary values of DcUrlInfo and StoreProxyInfo
+     */
+    private static final byte VALUE_VERSION = 1;
+
+    private static volatile SdkStateStore instance;
+
+    private final File file;
+    private final long[] values = new long[SLOT_COUNT];
+    /**
+     * Sequence number of the newest copy of each record, 0 if never written
+     */
+    private final long[] seqs = new long[SLOT_COUNT];
+    /**
+     * Copy holding the newest value of each record, the next write goes to the other one
+     */
+    private final int[] copies = new int[SLOT_COUNT];
+    private final Map<String, byte[]> entries = new HashMap<>();
+    /**
+     * Mapped file, null if it can not be used
+     */
+    private MappedByteBuffer buffer;
+    private int logEnd;
+
+    private SdkStateStore(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+        long start = SdkTracer.begin();
+        try {
+            open(context);
+        } catch (IOException e) {
+            buffer = null;
+            SdkLog.e(TAG, "State file is not usable, state is kept in memory", e);
+        }
+        SdkTracer.end(SdkTracer.STATE_OPEN, start);
+    }
+
+    public static SdkStateStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SdkStateStore.class) {
+                if (instance == null) {
+                    instance = new SdkStateStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param slot         SLOT_ constant
+     * @param defaultValue Value to return if the record has never been written
+     * @return value of the record
+     */
+    public synchronized long getLong(int slot, long defaultValue) {
+        return seqs[slot] == 0 ? defaultValue : values[slot];
+    }
+
+    /**
+     * @param slot  SLOT_ constant
+     * @param value new value of the record
+     */
+    public synchronized void putLong(int slot, long value) {
+        values[slot] = value;
+        seqs[slot]++;
+        copies[slot] ^= 1;
+        if (buffer == null) {
+            return;
+        }
+        long start = SdkMetrics.start();
+        writeRecord(buffer, slot, copies[slot]);
+        buffer.force();
+        SdkMetrics.stop(SdkMetrics.Timer.STATE_STORE_WRITE, start);
+        SdkTracer.end(SdkTracer.STATE_WRITE, start);
+    }
+
+    /**
+     * @param key
+     * @return the value, or null if it does not exist
+     */
+    public synchronized String getString(String key) {
+        byte[] value = entries.get(key);
+        return value == null ? null : new String(value, UTF_8);
+    }
+
+    /**
+     * @param key
+     * @param value new value, null to remove it
+     */
+    public synchronized void putString(String key, String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        put(key, value.getBytes(UTF_8));
+    }
+
+    public synchronized void remove(String key) {
+        if (entries.remove(key) != null) {
+            append(OP_REMOVE, key, null);
+        }
+    }
+
+    /**
+     * @return the cached DC url, or null if none
+     */
+    public synchronized DcUrlInfo getDcUrlInfo() {
+        byte[] value = entries.get(KEY_DC_URL_INFO);
+        if (value == null) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+            in.readByte();
+            DcUrlInfo dcUrlInfo = new DcUrlInfo();
+            dcUrlInfo.setDcUrl(readString(in));
+            dcUrlInfo.setStaticUrl(readString(in));
+            dcUrlInfo.setLastAccessTime(in.readLong());
+            return dcUrlInfo;
+        } catch (IOException e) {
+            SdkLog.w(TAG, "Broken DC url info", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param dcUrlInfo DC url to cache, null to remove it
+     */
+    public synchronized void putDcUrlInfo(DcUrlInfo dcUrlInfo) {
+        if (dcUrlInfo == null) {
+            remove(KEY_DC_URL_INFO);
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VALUE_VERSION);
+            writeString(out, dcUrlInfo.getDcUrl());
+            writeString(out, dcUrlInfo.getStaticUrl());
+            out.writeLong(dcUrlInfo.getLastAccessTime());
+            put(KEY_DC_URL_INFO, bytes.toByteArray());
+        } catch (IOException e) {
+            SdkLog.w(TAG, "Cannot save DC url info", e);
+        }
+    }
+
+    /**
+     * @return the saved proxy settings, or null if none
+     */
+    public synchronized StoreProxyInfo getStoreProxyInfo() {
+        byte[] value = entries.get(KEY_STORE_PROXY_INFO);
+        if (value == null) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+            in.readByte();
+            StoreProxyInfo storeProxyInfo = new StoreProxyInfo();
+            storeProxyInfo.setType(in.readInt());
+            storeProxyInfo.setHost(readString(in));
+            storeProxyInfo.setPort(in.readInt());
+            storeProxyInfo.setAuthorization(readString(in));
+            storeProxyInfo.setUsername(readString(in));
+            String password = readString(in);
+            storeProxyInfo.setPassword(password != null ? password.toCharArray() : null);
+            return storeProxyInfo;
+        } catch (IOException e) {
+            SdkLog.w(TAG, "Broken proxy settings", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param storeProxyInfo proxy settings to save, null to remove them
+     */
+    public synchronized void putStoreProxyInfo(StoreProxyInfo storeProxyInfo) {
+        if (storeProxyInfo == null) {
+            remove(KEY_STORE_PROXY_INFO);
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VALUE_VERSION);
+            out.writeInt(storeProxyInfo.getType());
+            writeString(out, storeProxyInfo.getHost());
+            out.writeInt(storeProxyInfo.getPort());
+            writeString(out, storeProxyInfo.getAuthorization());
+            writeString(out, storeProxyInfo.getUsername());
+            writeString(out, storeProxyInfo.getPassword() == null ? null : String.copyValueOf(storeProxyInfo.getPassword()));
+            put(KEY_STORE_PROXY_INFO, bytes.toByteArray());
+        } catch (IOException e) {
+            SdkLog.w(TAG, "Cannot save proxy settings", e);
+        }
+    }
+
+    private void put(String key, byte[] value) {
+        if (Arrays.equals(entries.get(key), value)) {
+            return;
+        }
+        entries.put(key, value);
+        append(OP_PUT, key, value);
+    }
+
+    private void append(byte op, String key, byte[] value) {
+        if (buffer == null) {
+            return;
+        }
+        long start = SdkMetrics.start();
+        byte[] body = encodeEntry(op, key, value);
+        try {
+            if (logEnd + ENTRY_HEADER_SIZE + body.length > buffer.capacity()) {
+                // entries already holds this change
+                rewrite();
+            } else {
+                logEnd = writeEntry(buffer, logEnd, body);
+                buffer.force();
+            }
+        } catch (IOException e) {
+            buffer = null;
+            SdkLog.e(TAG, "Cannot write state file, state is kept in memory", e);
+        }
+        SdkMetrics.stop(SdkMetrics.Timer.STATE_STORE_WRITE, start);
+        SdkTracer.end(SdkTracer.STATE_WRITE, start);
+    }
+
+    private void open(Context context) throws IOException {
+        new File(file.getPath() + ".tmp").delete();
+        long length = file.length();
+        if (length >= LOG_START && length <= MAX_SIZE) {
+            buffer = map(file, (int) length);
+            if (load()) {
+                return;
+            }
+            SdkLog.w(TAG, "Unknown state file, create a new one");
+            buffer = null;
+            Arrays.fill(values, 0);
+            Arrays.fill(seqs, 0);
+            Arrays.fill(copies, 0);
+            entries.clear();
+        }
+        migrate(context);
+    }
+
+    /**
+     * @return false if the file is not of this version
+     */
+    private boolean load() throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != SLOT_COUNT) {
+            return false;
+        }
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            readRecord(slot);
+        }
+        int position = LOG_START;
+        boolean torn = false;
+        ByteBuffer reader = buffer.duplicate();
+        while (position + ENTRY_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 3 || length > buffer.capacity() - position - ENTRY_HEADER_SIZE) {
+                torn = true;
+                break;
+            }
+            byte[] body = new byte[length];
+            reader.position(position + ENTRY_HEADER_SIZE);
+            reader.get(body);
+            if (buffer.getInt(position + 4) != crc(body, body.length) || !applyEntry(body)) {
+                torn = true;
+                break;
+            }
+            position += ENTRY_HEADER_SIZE + length;
+        }
+        logEnd = position;
+        if (torn) {
+            // Bytes after a torn entry might be read as entries once it is overwritten
+            SdkLog.w(TAG, "Torn entry at {}, compact state file", position);
+            rewrite();
+        }
+        return true;
+    }
+
+    private void readRecord(int slot) {
+        for (int copy = 0; copy < 2; copy++) {
+            int offset = recordOffset(slot, copy);
+            long seq = buffer.getLong(offset);
+            long value = buffer.getLong(offset + 8);
+            if (seq > seqs[slot] && buffer.getInt(offset + 16) == recordCrc(seq, value)) {
+                seqs[slot] = seq;
+                values[slot] = value;
+                copies[slot] = copy;
+            }
+        }
+    }
+
+    private boolean applyEntry(byte[] body) {
+        int keyLength = ((body[1] & 0xff) << 8) | (body[2] & 0xff);
+        if (3 + keyLength > body.length) {
+            return false;
+        }
+        String key = new String(body, 3, keyLength, UTF_8);
+        if (body[0] == OP_PUT) {
+            entries.put(key, Arrays.copyOfRange(body, 3 + keyLength, body.length));
+        } else if (body[0] == OP_REMOVE) {
+            entries.remove(key);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write the state in memory to a new file and rename it over the current one.
+     */
+    private void rewrite() throws IOException {
+        byte[][] bodies = new byte[entries.size()][];
+        int live = 0;
+        int i = 0;
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            bodies[i] = encodeEntry(OP_PUT, entry.getKey(), entry.getValue());
+            live += ENTRY_HEADER_SIZE + bodies[i].length;
+            i++;
+        }
+        int size = INITIAL_SIZE;
+        while (size < LOG_START + 2 * live) {
+            size *= 2;
+        }
+        if (size > MAX_SIZE) {
+            throw new IOException("State too large: " + live);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        tmp.delete();
+        MappedByteBuffer target = map(tmp, size);
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            copies[slot] = 0;
+            if (seqs[slot] != 0) {
+                writeRecord(target, slot, 0);
+            }
+        }
+        int position = LOG_START;
+        for (byte[] body : bodies) {
+            position = writeEntry(target, position, body);
+        }
+        target.putInt(0, MAGIC);
+        target.putInt(4, VERSION);
+        target.putInt(8, SLOT_COUNT);
+        target.force();
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmp);
+        }
+        buffer = target;
+        logEnd = position;
+    }
+
+    /**
+     * Move the state saved in SharedPreferences by former versions into a new file.
+     */
+    private void migrate(Context context) throws IOException {
+        SharedPreferences preferences = context.getSharedPreferences(PreferencesUtils.PREFERENCE_NAME, Context.MODE_PRIVATE);
+        SharedPreferences cfg = context.getSharedPreferences(LEGACY_CFG_NAME, Context.MODE_PRIVATE);
+        migrateLong(preferences, CommonConstants.SP_LAST_GET_TERMINAL_INFO_TIME, SLOT_LAST_GET_TERMINAL_INFO_TIME);
+        migrateLong(preferences, CommonConstants.SP_LAST_GET_ONLINE_STATUS_TIME, SLOT_LAST_GET_ONLINE_STATUS_TIME);
+        migrateLong(preferences, CommonConstants.SP_LAST_GET_LOCATION_TIME, SLOT_LAST_GET_LOCATION_TIME);
+        String dcUrlInfo = preferences.getString(KEY_DC_URL_INFO, null);
+        if (dcUrlInfo != null) {
+            try {
+                putDcUrlInfo(SdkJson.fromJson(dcUrlInfo, DcUrlInfo.class));
+            } catch (RuntimeException e) {
+                SdkLog.w(TAG, "Broken DC url info", e);
+            }
+        }
+        List<String> legacyStrings = new ArrayList<>(Arrays.asList(LEGACY_STRINGS));
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            for (String prefix : LEGACY_STRING_PREFIXES) {
+                if (entry.getKey().startsWith(prefix) && entry.getValue() instanceof String) {
+                    legacyStrings.add(entry.getKey());
+                }
+            }
+        }
+        for (String key : legacyStrings) {
+            putString(key, preferences.getString(key, null));
+        }
+        if (cfg.getInt(LEGACY_PROXY_TYPE, -1) != -1) {
+            StoreProxyInfo storeProxyInfo = new StoreProxyInfo();
+            storeProxyInfo.setType(cfg.getInt(LEGACY_PROXY_TYPE, -1));
+            storeProxyInfo.setHost(cfg.getString(LEGACY_PROXY_HOST, null));
+            storeProxyInfo.setPort(cfg.getInt(LEGACY_PROXY_PORT, 0));
+            storeProxyInfo.setAuthorization(cfg.getString(LEGACY_PROXY_AUTH, null));
+            storeProxyInfo.setUsername(cfg.getString(LEGACY_PROXY_USER, null));
+            String password = cfg.getString(LEGACY_PROXY_PASS, null);
+            storeProxyInfo.setPassword(password != null ? password.toCharArray() : null);
+            putStoreProxyInfo(storeProxyInfo);
+        }
+
+        rewrite();
+
+        SharedPreferences.Editor editor = preferences.edit()
+                .remove(CommonConstants.SP_LAST_GET_TERMINAL_INFO_TIME)
+                .remove(CommonConstants.SP_LAST_GET_ONLINE_STATUS_TIME)
+                .remove(CommonConstants.SP_LAST_GET_LOCATION_TIME)
+                .remove(KEY_DC_URL_INFO);
+        for (String key : legacyStrings) {
+            editor.remove(key);
+        }
+        editor.apply();
+        cfg.edit().clear().apply();
+    }
+
+    private void migrateLong(SharedPreferences preferences, String key, int slot) {
+        if (preferences.contains(key)) {
+            try {
+                putLong(slot, preferences.getLong(key, 0L));
+            } catch (ClassCastException e) {
+                SdkLog.w(TAG, "Broken preference {}", key);
+            }
+        }
+    }
+
+    private void writeRecord(ByteBuffer target, int slot, int copy) {
+        int offset = recordOffset(slot, copy);
+        target.putLong(offset, seqs[slot]);
+        target.putLong(offset + 8, values[slot]);
+        target.putInt(offset + 16, recordCrc(seqs[slot], values[slot]));
+    }
+
+    /**
+     * Write the body first and its length last, so an entry torn by a crash reads as the end of the log.
+     *
+     * @return position after the entry
+     */
+    private static int writeEntry(ByteBuffer target, int position, byte[] body) {
+        ByteBuffer writer = target.duplicate();
+        writer.position(position + ENTRY_HEADER_SIZE);
+        writer.put(body);
+        target.putInt(position + 4, crc(body, body.length));
+        target.putInt(position, body.length);
+        return position + ENTRY_HEADER_SIZE + body.length;
+    }
+
+    private static byte[] encodeEntry(byte op, String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int valueLength = value == null ? 0 : value.length;
+        byte[] body = new byte[3 + keyBytes.length + valueLength];
+        body[0] = op;
+        body[1] = (byte) (keyBytes.length >>> 8);
+        body[2] = (byte) keyBytes.length;
+        System.arraycopy(keyBytes, 0, body, 3, keyBytes.length);
+        if (value != null) {
+            System.arraycopy(value, 0, body, 3 + keyBytes.length, valueLength);
+        }
+        return body;
+    }
+
+    private static int recordOffset(int slot, int copy) {
+        return HEADER_SIZE + (slot * 2 + copy) * RECORD_SIZE;
+    }
+
+    private static int recordCrc(long seq, long value) {
+        byte[] bytes = ByteBuffer.allocate(16).putLong(seq).putLong(value).array();
+        return crc(bytes, bytes.length);
+    }
+
+    private static int crc(byte[] bytes, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, length);
+        return (int) crc32.getValue();
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (randomAccessFile.length() != size) {
+                randomAccessFile.setLength(size);
+            }
+            // The mapping stays valid after the file is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
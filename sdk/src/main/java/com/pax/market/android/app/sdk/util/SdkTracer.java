@@ -0,0 +1,212 @@
+package com.pax.market.android.app.sdk.util;
+
+import android.os.Process;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional tracing of the SDK work, e.g. binding PAXSTORE services, AIDL calls, AsyncTask queue
+ * wait, SharedPreferences reads and HTTP requests.
+ * <p>
+ * Spans are kept in a fixed-size ring buffer, the oldest ones are overwritten. When tracing is off,
+ * {@link #begin()} and {@link #end(String, long)} are a volatile read each.
+ * <pre>
+ * SdkTracer.enable(4096);
+ * StoreSdk.getInstance().init(...);
+ * ...
+ * SdkTracer.dump(new File(getExternalFilesDir(null), "sdk-trace.json"));
+ * </pre>
+ * The dump is in Chrome trace event format, open it with chrome://tracing or Perfetto.
+ */
+public class SdkTracer {
+    public static final String BIND_API_URL_SERVICE = "bind API url service";
+    public static final String BIND_REMOTE_SDK_SERVICE = "bind remote SDK service";
+    public static final String AIDL_GET_PROXY = "AIDL getStoreProxyInfo";
+    public static final String AIDL_GET_TERMINAL = "AIDL getSn/getApiUrl/getModel";
+    public static final String AIDL_GET_DC_URL = "AIDL getDcUrlInfoByTid";
+    public static final String AIDL_GET_TERMINAL_INFO = "AIDL getBaseTerminalInfo";
+    public static final String ASYNC_TASK_WAIT = "AsyncTask queue wait";
+    public static final String SP_READ = "SharedPreferences read";
+    public static final String SP_COMMIT = "SharedPreferences commit";
+    public static final String STATE_OPEN = "State store open";
+    public static final String STATE_WRITE = "State store write";
+    public static final String HTTP_MEDIA = "HTTP media fetch";
+    public static final String HTTP_PARAM_DOWNLOAD = "HTTP param download";
+    public static final String STORE_SDK_INIT = "StoreSdk init";
+    public static final String DC_URL_RESOLVE = "DC url resolve";
+    public static final String API_CREATE = "API object create";
+
+    private static volatile boolean enabled;
+    private static volatile Buffer buffer;
+
+    private SdkTracer() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Start recording spans, the spans recorded before are dropped.
+     *
+     * @param capacity max spans kept, the oldest ones are overwritten
+     */
+    public static synchronized void enable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        buffer = new Buffer(capacity);
+        enabled = true;
+    }
+
+    /**
+     * Stop recording, the spans recorded can still be dumped.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return start of a span, pass it to {@link #end(String, long)}
+     */
+    public static long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record a span from start to now on the current thread.
+     *
+     * @param name  constant name of the span, e.g. {@link #BIND_API_URL_SERVICE}
+     * @param start returned by {@link #begin()}, or any {@link System#nanoTime()}
+     */
+    public static void end(String name, long start) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        Buffer current = buffer;
+        if (current != null) {
+            Thread thread = Thread.currentThread();
+            current.add(name, start, System.nanoTime() - start, thread.getId(), thread.getName());
+        }
+    }
+
+    /**
+     * Write the recorded spans as a Chrome trace JSON file.
+     *
+     * @param file
+     * @return spans written
+     * @throws IOException
+     */
+    public static int dump(File file) throws IOException {
+        Buffer current = buffer;
+        if (current == null) {
+            return 0;
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            return current.writeTo(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Spans in parallel arrays, a slot is taken by an atomic increment and written without a lock.
+     * A span overwritten while being dumped may come out torn, tracing is a diagnostic aid.
+     */
+    private static class Buffer {
+        private final int capacity;
+        private final AtomicLong next = new AtomicLong();
+        private final String[] names;
+        private final long[] starts;
+        private final long[] durations;
+        private final long[] threadIds;
+        private final String[] threadNames;
+
+        Buffer(int capacity) {
+            this.capacity = capacity;
+            names = new String[capacity];
+            starts = new long[capacity];
+            durations = new long[capacity];
+            threadIds = new long[capacity];
+            threadNames = new String[capacity];
+        }
+
+        void add(String name, long start, long duration, long threadId, String threadName) {
+            int slot = (int) (next.getAndIncrement() % capacity);
+            starts[slot] = start;
+            durations[slot] = duration;
+            threadIds[slot] = threadId;
+            threadNames[slot] = threadName;
+            names[slot] = name;
+        }
+
+        int writeTo(Writer writer) throws IOException {
+            long end = next.get();
+            long first = Math.max(0, end - capacity);
+            int pid = Process.myPid();
+            Map<Long, String> threads = new HashMap<>();
+            int written = 0;
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            for (long i = first; i < end; i++) {
+                int slot = (int) (i % capacity);
+                String name = names[slot];
+                if (name == null) {
+                    continue;
+                }
+                if (written > 0) {
+                    writer.write(',');
+                }
+                writer.write("\n{\"name\":\"");
+                writeEscaped(writer, name);
+                writer.write("\",\"ph\":\"X\",\"ts\":");
+                writer.write(Long.toString(starts[slot] / 1000));
+                writer.write(",\"dur\":");
+                writer.write(Long.toString(durations[slot] / 1000));
+                writer.write(",\"pid\":");
+                writer.write(Integer.toString(pid));
+                writer.write(",\"tid\":");
+                writer.write(Long.toString(threadIds[slot]));
+                writer.write('}');
+                threads.put(threadIds[slot], threadNames[slot]);
+                written++;
+            }
+            for (Map.Entry<Long, String> thread : threads.entrySet()) {
+                writer.write(written > 0 ? ",\n" : "\n");
+                writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":");
+                writer.write(Integer.toString(pid));
+                writer.write(",\"tid\":");
+                writer.write(Long.toString(thread.getKey()));
+                writer.write(",\"args\":{\"name\":\"");
+                writeEscaped(writer, String.valueOf(thread.getValue()));
+                writer.write("\"}}");
+                written++;
+            }
+            writer.write("\n]}\n");
+            return written - threads.size();
+        }
+
+        private static void writeEscaped(Writer writer, String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    writer.write('\\');
+                    writer.write(c);
+                } else if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", (int) c));
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.pax.market.android.app.sdk.util;
+
+import android.content.Context;
+import android.os.AsyncTask;
+
+import com.pax.market.android.app.sdk.BaseApiService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URL;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Shared HTTP transport of the SDK.
+ * <p>
+ * HttpURLConnection keeps one connection pool and, through the default SSLContext, one TLS session
+ * cache per process. The API objects of StoreSdk open their connections with HttpURLConnection as
+ * well, so they all share the pool and the session cache. The session cache is left as the
+ * platform or the app configured it. A connection only goes back to the pool when
+ * its response body is read to the end and closed, see {@link #release(HttpURLConnection, InputStream)}.
+ */
+public class SdkTransport {
+    private static final String TAG = SdkTransport.class.getSimpleName();
+
+    private static final String PROP_KEEP_ALIVE = "http.keepAlive";
+    private static final String PROP_MAX_CONNECTIONS = "http.maxConnections";
+    /**
+     * Idle connections kept per route
+     */
+    private static final int MAX_CONNECTIONS = 5;
+    private static final int CONNECT_TIMEOUT = 10_000;
+    private static final int READ_TIMEOUT = 20_000;
+    /**
+     * Body bytes read at most to keep a connection reusable, a longer body is cheaper to drop
+     */
+    private static final int MAX_DRAIN = 64 * 1024;
+    private static final String HEADER_PROXY_AUTHORIZATION = "Proxy-Authorization";
+
+    private static volatile boolean installed;
+    private static volatile String warmedUrl;
+
+    private SdkTransport() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Turn on keep-alive, the settings of the app are kept if it has any.
+     * <p>
+     * The pool reads the properties once, when the first HttpURLConnection of the process is opened.
+     * So this must run before that, otherwise the pool keeps the settings it started with.
+     */
+    public static void install() {
+        if (installed) {
+            return;
+        }
+        synchronized (SdkTransport.class) {
+            if (installed) {
+                return;
+            }
+            if (System.getProperty(PROP_KEEP_ALIVE) == null) {
+                System.setProperty(PROP_KEEP_ALIVE, "true");
+            }
+            if (System.getProperty(PROP_MAX_CONNECTIONS) == null) {
+                System.setProperty(PROP_MAX_CONNECTIONS, String.valueOf(MAX_CONNECTIONS));
+            }
+            installed = true;
+        }
+    }
+
+    /**
+     * Open a connection through the PAXSTORE proxy.
+     *
+     * @param context
+     * @param url
+     * @return connection with timeouts and proxy authorization set
+     * @throws IOException
+     */
+    public static HttpURLConnection open(Context context, String url) throws IOException {
+        install();
+        BaseApiService apiService = BaseApiService.getInstance(context);
+        Proxy proxy = apiService.retrieveProxy();
+        URL target = new URL(url);
+        HttpURLConnection conn = (HttpURLConnection) (proxy == null ? target.openConnection() : target.openConnection(proxy));
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        String proxyAuthorization = apiService.retrieveBasicAuthorization();
+        if (proxyAuthorization != null) {
+            conn.setRequestProperty(HEADER_PROXY_AUTHORIZATION, proxyAuthorization);
+        }
+        return conn;
+    }
+
+    /**
+     * Finish with the response, so the connection can be reused by the next request.
+     *
+     * @param conn
+     * @param body response body not consumed yet, may be null
+     */
+    public static void release(HttpURLConnection conn, InputStream body) {
+        if (body == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            int drained = 0;
+            int count;
+            while (drained < MAX_DRAIN && (count = body.read(buffer)) != -1) {
+                drained += count;
+            }
+            if (drained >= MAX_DRAIN) {
+                conn.disconnect();
+            }
+        } catch (IOException e) {
+            // connection is dropped by the pool
+        } finally {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // swallow
+            }
+        }
+    }
+
+    /**
+     * Handshake with the host of baseUrl in background, so the first API call resumes the TLS session
+     * instead of a full handshake. No HTTP request is sent. Nothing is done for a plain http url, when
+     * a proxy is set, or if the same url has been warmed up.
+     *
+     * @param context
+     * @param baseUrl
+     */
+    public static void warmUp(final Context context, final String baseUrl) {
+        if (baseUrl == null || baseUrl.equals(warmedUrl)) {
+            return;
+        }
+        warmedUrl = baseUrl;
+        final Context appContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Socket socket = null;
+                try {
+                    URL target = new URL(baseUrl);
+                    if (!"https".equalsIgnoreCase(target.getProtocol())
+                            || BaseApiService.getInstance(appContext).retrieveProxy() != null) {
+                        return;
+                    }
+                    String host = target.getHost();
+                    int port = target.getPort() == -1 ? target.getDefaultPort() : target.getPort();
+                    socket = new Socket();
+                    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+                    socket.setSoTimeout(READ_TIMEOUT);
+                    socket = HttpsURLConnection.getDefaultSSLSocketFactory().createSocket(socket, host, port, true);
+                    ((SSLSocket) socket).startHandshake();
+                } catch (IOException e) {
+                    SdkLog.w(TAG, "Warm up {} failed, e:{}", baseUrl, e);
+                    warmedUrl = null;
+                } finally {
+                    if (socket != null) {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // swallow
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,176 @@
+package com.pax.market.android.app.sdk.util;
+
+import android.content.Context;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Pick how an SDK transfer should run on the current network.
+ * <p>
+ * Throughput of the recent transfers is kept per network type as an
+ * exponentially weighted moving average. Until a network type has been measured, the
+ * decision falls back to the nominal figures of its class (2G / 3G / 4G / Wi-Fi / Ethernet).
+ * <p>
+ * Parameter downloads only feed the estimates: they are requested by PAXSTORE, never deferred,
+ * and their transfer is run by the PAXSTORE Java SDK, which takes no chunk size.
+ * The network type comes from {@link NetworkMonitor}.
+ */
+public class TransferPolicy {
+
+    public enum Operation {
+        MEDIA_FETCH,
+        GOINSIGHT_UPLOAD
+    }
+
+    /**
+     * Weight of the newest sample
+     */
+    private static final double EWMA_ALPHA = 0.3;
+    private static final int MIN_CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_CHUNK_SIZE = 256 * 1024;
+    /**
+     * A chunk is sized to be transferred in about this time
+     */
+    private static final long CHUNK_TIME_MS = 250;
+    /**
+     * Below this throughput (bytes per second) the deferrable operations wait for a better network
+     */
+    private static final long DEFER_THROUGHPUT = 4 * 1024;
+
+    private static volatile TransferPolicy instance;
+
+    private final Context context;
+    private final Map<NetWorkUtils.NetworkType, Estimate> estimates = new EnumMap<>(NetWorkUtils.NetworkType.class);
+
+    private TransferPolicy(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static TransferPolicy getInstance(Context context) {
+        if (instance == null) {
+            synchronized (TransferPolicy.class) {
+                if (instance == null) {
+                    instance = new TransferPolicy(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Record a finished transfer on the current network.
+     *
+     * @param bytes      bytes transferred
+     * @param durationMs time spent on the body, excluding the round trip of the request
+     */
+    public void record(long bytes, long durationMs) {
+        NetWorkUtils.NetworkType networkType = NetWorkUtils.getNetworkType(context);
+        if (networkType == NetWorkUtils.NetworkType.NETWORK_NO) {
+            return;
+        }
+        synchronized (estimates) {
+            Estimate estimate = estimates.get(networkType);
+            if (estimate == null) {
+                estimate = nominalOf(networkType);
+                estimates.put(networkType, estimate);
+            }
+            if (bytes > 0 && durationMs > 0) {
+                estimate.throughput = ewma(estimate.throughput, bytes * 1000 / durationMs);
+            }
+        }
+    }
+
+    /**
+     * @param operation
+     * @return how to run the operation on the current network
+     */
+    public Decision decide(Operation operation) {
+        NetworkSnapshot network = NetworkMonitor.getInstance(context).getSnapshot();
+        NetWorkUtils.NetworkType networkType = network.getType();
+        if (networkType == NetWorkUtils.NetworkType.NETWORK_NO) {
+            return new Decision(MIN_CHUNK_SIZE, true);
+        }
+        long throughput;
+        synchronized (estimates) {
+            Estimate estimate = estimates.get(networkType);
+            if (estimate == null) {
+                estimate = nominalOf(networkType);
+            }
+            throughput = estimate.throughput;
+        }
+
+        int chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, throughput * CHUNK_TIME_MS / 1000));
+        boolean defer = throughput < DEFER_THROUGHPUT;
+        if (operation == Operation.GOINSIGHT_UPLOAD && networkType == NetWorkUtils.NetworkType.NETWORK_2G) {
+            defer = true;
+        }
+        return new Decision(chunkSize, defer);
+    }
+
+    private static long ewma(long average, long sample) {
+        return (long) (EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * average);
+    }
+
+    private static Estimate nominalOf(NetWorkUtils.NetworkType networkType) {
+        Estimate estimate = new Estimate();
+        switch (networkType) {
+            case NETWORK_WIFI:
+            case NETWORK_ETHERNET:
+                estimate.throughput = 1024 * 1024;
+                break;
+            case NETWORK_4G:
+                estimate.throughput = 512 * 1024;
+                break;
+            case NETWORK_3G:
+                estimate.throughput = 64 * 1024;
+                break;
+            case NETWORK_2G:
+                estimate.throughput = 8 * 1024;
+                break;
+            default:
+                estimate.throughput = 32 * 1024;
+                break;
+        }
+        return estimate;
+    }
+
+    private static class Estimate {
+        /**
+         * Bytes per second
+         */
+        private long throughput;
+    }
+
+    public static class Decision {
+        private final int chunkSize;
+        private final boolean defer;
+
+        Decision(int chunkSize, boolean defer) {
+            this.chunkSize = chunkSize;
+            this.defer = defer;
+        }
+
+        /**
+         * @return buffer size used to read or write the transfer body
+         */
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * @return true if the operation should wait for a better network
+         */
+        public boolean isDefer() {
+            return defer;
+        }
+
+        @Override
+        public String toString() {
+            return "Decision{" +
+                    "chunkSize=" + chunkSize +
+                    ", defer=" + defer +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.pax.market.android.app.sdk;
+
+import android.app.Application;
+import android.os.RemoteException;
+
+import com.pax.market.android.app.testharness.FakeStoreServer;
+import com.pax.market.android.app.testharness.PaxStoreStandIn;
+import com.pax.market.api.sdk.java.base.dto.DownloadResultObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * StoreSdk against the PAXSTORE stand-in: init, DC url churn and a download resumed after a
+ * truncated response.
+ * <p>
+ * The SDK singletons live as long as the Robolectric sandbox, so the steps run in one test in order.
+ * Calls asking PAXSTORE for the DC url run off the main thread, the test thread idles the main
+ * looper meanwhile to deliver onServiceConnected.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class StoreSdkSmokeTest {
+    private static final String PACKAGE_NAME = "com.pax.market.android.app.smoke";
+    private static final String PARAM_PATH = "/v1/3rdApps/param";
+    private static final String DC1_PATH = "/p-market-api";
+    private static final String DC2_PATH = "/dc2/p-market-api";
+    private static final String FILE_PATH = "/download/param.xml";
+    /**
+     * Main looper idles of 10ms at most while waiting for a call off the main thread
+     */
+    private static final int MAX_WAITS = 3000;
+
+    private Application application;
+    private PaxStoreStandIn standIn;
+    private FakeStoreServer fileServer;
+
+    @Before
+    public void setUp() throws IOException {
+        application = RuntimeEnvironment.application;
+        standIn = PaxStoreStandIn.install(application);
+        FakeStoreServer server = standIn.getServer();
+        standIn.getApiUrlService().setDcUrls(server.url(DC1_PATH), server.url(DC2_PATH));
+        // downloads are served apart, so faults injected there leave the API calls alone
+        fileServer = new FakeStoreServer().start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileServer.close();
+        standIn.uninstall();
+    }
+
+    @Test
+    public void initFollowDcUrlChurnAndResumeDownload() throws Exception {
+        init();
+        followDcUrlChurn();
+        resumeTruncatedDownload();
+    }
+
+    private void init() {
+        final AtomicReference<Boolean> initResult = new AtomicReference<>();
+        StoreSdk.getInstance().init(application, "appKey", "appSecret", new BaseApiService.Callback() {
+            @Override
+            public void initSuccess() {
+                initResult.set(true);
+            }
+
+            @Override
+            public void initFailed(RemoteException e) {
+                initResult.set(false);
+            }
+        });
+        ShadowLooper.idleMainLooper();
+
+        assertEquals(Boolean.TRUE, initResult.get());
+        assertTrue(StoreSdk.getInstance().checkInitialization());
+    }
+
+    private void followDcUrlChurn() throws Exception {
+        standIn.getServer().route("GET", DC1_PATH + PARAM_PATH, FakeStoreServer.Response.json(emptyParamList()));
+        standIn.getServer().route("GET", DC2_PATH + PARAM_PATH, FakeStoreServer.Response.json(emptyParamList()));
+
+        // first call resolves the DC url from PAXSTORE, the first lookup answers DC 1
+        assertEquals(DC1_PATH + PARAM_PATH, requestParamList());
+        assertEquals(1, standIn.getApiUrlService().getDcUrlLookups());
+
+        // refresh right away: the next call is served by DC 1 and refreshes in background to DC 2
+        StoreSdk.getInstance().setDcUrlRefreshAhead(Float.MIN_VALUE);
+        assertEquals(DC1_PATH + PARAM_PATH, requestParamList());
+        StoreSdk.getInstance().setDcUrlRefreshAhead(1f);
+
+        String path = null;
+        for (int i = 0; i < 50 && !(DC2_PATH + PARAM_PATH).equals(path); i++) {
+            path = requestParamList();
+        }
+        assertEquals(DC2_PATH + PARAM_PATH, path);
+        assertEquals(2, standIn.getApiUrlService().getDcUrlLookups());
+    }
+
+    private void resumeTruncatedDownload() throws Exception {
+        byte[] content = new byte[256 * 1024];
+        new Random(47).nextBytes(content);
+        fileServer.route("GET", FILE_PATH, FakeStoreServer.Response.file(content));
+        String paramList = "{\"businessCode\":0,\"totalCount\":1,\"list\":[{\"actionId\":1,\"appId\":1,\"versionCode\":1,"
+                + "\"downloadUrl\":\"" + fileServer.url(FILE_PATH) + "\",\"md\":\"" + md5(content) + "\",\"paramVariables\":\"\"}]}";
+        standIn.getServer().route("GET", DC2_PATH + PARAM_PATH, FakeStoreServer.Response.json(paramList));
+        final File saveDir = new File(application.getFilesDir(), "param");
+        assertTrue(saveDir.mkdirs());
+
+        // the first response sends half of the file and drops the connection
+        fileServer.setFailureMode(FakeStoreServer.FailureMode.TRUNCATE);
+        fileServer.getFaults().failNext(1);
+        DownloadResultObject first = download(saveDir);
+        assertNotEquals(0, first.getBusinessCode());
+        long bytesKept = ParamDownloadJournal.bytesOnDisk(saveDir.getPath());
+
+        DownloadResultObject second = download(saveDir);
+        assertEquals(0, second.getBusinessCode());
+
+        List<FakeStoreServer.RecordedRequest> downloads = fileServer.takeRequests();
+        assertTrue(downloads.size() >= 2);
+        // resumed from the bytes the first attempt left on disk
+        String range = downloads.get(downloads.size() - 1).getHeader("Range");
+        assertNotNull(range);
+        assertEquals("bytes=" + bytesKept + "-", range);
+        assertArrayEquals(content, readSavedFile(saveDir, content.length));
+    }
+
+    /**
+     * @return path of the param list request the call sent
+     */
+    private String requestParamList() throws Exception {
+        standIn.getServer().takeRequests();
+        offMain(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return StoreSdk.getInstance().paramApi().getParamDownloadList(PACKAGE_NAME, 1);
+            }
+        });
+        for (FakeStoreServer.RecordedRequest request : standIn.getServer().takeRequests()) {
+            if (request.getPath().endsWith(PARAM_PATH)) {
+                return request.getPath();
+            }
+        }
+        fail("No param list request sent");
+        return null;
+    }
+
+    private DownloadResultObject download(final File saveDir) throws Exception {
+        return offMain(new Callable<DownloadResultObject>() {
+            @Override
+            public DownloadResultObject call() throws Exception {
+                return StoreSdk.getInstance().paramApi().downloadParamToPath(PACKAGE_NAME, 1, saveDir.getPath());
+            }
+        });
+    }
+
+    /**
+     * Run the task on a worker thread, the SDK refuses to ask PAXSTORE for the DC url on the main
+     * thread, and idle the main looper until it is done.
+     */
+    private static <T> T offMain(Callable<T> task) throws Exception {
+        FutureTask<T> future = new FutureTask<>(task);
+        new Thread(future, "smoke-test-worker").start();
+        for (int i = 0; i < MAX_WAITS; i++) {
+            ShadowLooper.idleMainLooper();
+            try {
+                return future.get(10, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // keep delivering the service connections
+            }
+        }
+        future.cancel(true);
+        throw new AssertionError("Call off main thread timed out");
+    }
+
+    private static byte[] readSavedFile(File saveDir, int length) throws IOException {
+        File[] files = saveDir.listFiles();
+        assertNotNull(files);
+        for (File file : files) {
+            if (file.isFile() && file.length() == length) {
+                byte[] bytes = new byte[length];
+                InputStream in = new FileInputStream(file);
+                try {
+                    int read = 0;
+                    int count;
+                    while (read < length && (count = in.read(bytes, read, length - read)) != -1) {
+                        read += count;
+                    }
+                } finally {
+                    in.close();
+                }
+                return bytes;
+            }
+        }
+        fail("No complete file saved in " + Arrays.toString(files));
+        return null;
+    }
+
+    private static String emptyParamList() {
+        return "{\"businessCode\":0,\"totalCount\":0,\"list\":[]}";
+    }
+
+    private static String md5(byte[] content) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
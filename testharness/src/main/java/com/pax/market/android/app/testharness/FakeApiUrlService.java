@@ -0,0 +1,168 @@
+package com.pax.market.android.app.testharness;
+
+import android.os.RemoteException;
+
+import com.pax.market.android.app.aidl.IApiUrlService;
+import com.pax.market.android.app.sdk.dto.DcUrlInfo;
+import com.pax.market.android.app.sdk.dto.StoreProxyInfo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fake of the PAXSTORE API url service bound by BaseApiService.
+ * <p>
+ * Several DC urls can be set to simulate DC url churn, every DC url lookup returns the next one.
+ * A failed call throws RemoteException, the same as a dead PAXSTORE client.
+ */
+public class FakeApiUrlService extends IApiUrlService.Stub {
+    private final Faults faults = new Faults();
+    private final AtomicInteger dcUrlLookups = new AtomicInteger();
+    private final Map<String, String> tidDcUrls = new ConcurrentHashMap<>();
+    private volatile String apiUrl;
+    private volatile String sn = "0820000001";
+    private volatile String model = "A920";
+    private volatile StoreProxyInfo storeProxyInfo;
+    private volatile List<String> dcUrls = Collections.emptyList();
+    private volatile String staticUrl;
+    private volatile boolean legacyClient;
+
+    public Faults getFaults() {
+        return faults;
+    }
+
+    public FakeApiUrlService setApiUrl(String apiUrl) {
+        this.apiUrl = apiUrl;
+        return this;
+    }
+
+    /**
+     * @param sn serial number, null or "null" makes the SDK init fail
+     * @return this
+     */
+    public FakeApiUrlService setSn(String sn) {
+        this.sn = sn;
+        return this;
+    }
+
+    public FakeApiUrlService setModel(String model) {
+        this.model = model;
+        return this;
+    }
+
+    /**
+     * @param storeProxyInfo proxy of PAXSTORE, null for no proxy
+     * @return this
+     */
+    public FakeApiUrlService setStoreProxyInfo(StoreProxyInfo storeProxyInfo) {
+        this.storeProxyInfo = storeProxyInfo;
+        return this;
+    }
+
+    /**
+     * @param dcUrls DC urls returned in turn, none to return null like a PAXSTORE client without DC url
+     * @return this
+     */
+    public FakeApiUrlService setDcUrls(String... dcUrls) {
+        this.dcUrls = Collections.unmodifiableList(Arrays.asList(dcUrls));
+        return this;
+    }
+
+    public FakeApiUrlService setStaticUrl(String staticUrl) {
+        this.staticUrl = staticUrl;
+        return this;
+    }
+
+    /**
+     * @param tid
+     * @param dcUrl DC url of the terminal, overrides {@link #setDcUrls(String...)} for this tid
+     * @return this
+     */
+    public FakeApiUrlService putTidDcUrl(String tid, String dcUrl) {
+        tidDcUrls.put(tid, dcUrl);
+        return this;
+    }
+
+    /**
+     * @param legacyClient true to behave like a PAXSTORE client lower than 8.0.0, getDcUrlInfoByTid returns null
+     * @return this
+     */
+    public FakeApiUrlService setLegacyClient(boolean legacyClient) {
+        this.legacyClient = legacyClient;
+        return this;
+    }
+
+    /**
+     * @return DC url lookups answered so far, by getDcUrlInfo and getDcUrlInfoByTid
+     */
+    public int getDcUrlLookups() {
+        return dcUrlLookups.get();
+    }
+
+    @Override
+    public String getApiUrl() throws RemoteException {
+        checkFaults("getApiUrl");
+        return apiUrl;
+    }
+
+    @Override
+    public StoreProxyInfo getStoreProxyInfo() throws RemoteException {
+        checkFaults("getStoreProxyInfo");
+        return storeProxyInfo;
+    }
+
+    @Override
+    public DcUrlInfo getDcUrlInfo() throws RemoteException {
+        checkFaults("getDcUrlInfo");
+        return nextDcUrlInfo(null);
+    }
+
+    @Override
+    public String getSn() throws RemoteException {
+        checkFaults("getSn");
+        return sn;
+    }
+
+    @Override
+    public String getModel() throws RemoteException {
+        checkFaults("getModel");
+        return model;
+    }
+
+    @Override
+    public DcUrlInfo getDcUrlInfoByTid(String tid) throws RemoteException {
+        checkFaults("getDcUrlInfoByTid");
+        if (legacyClient) {
+            return null;
+        }
+        return nextDcUrlInfo(tid);
+    }
+
+    private DcUrlInfo nextDcUrlInfo(String tid) {
+        int lookup = dcUrlLookups.getAndIncrement();
+        String dcUrl = tid == null || tid.isEmpty() ? null : tidDcUrls.get(tid);
+        if (dcUrl == null) {
+            List<String> urls = dcUrls;
+            if (urls.isEmpty()) {
+                return null;
+            }
+            dcUrl = urls.get(lookup % urls.size());
+        }
+        DcUrlInfo info = new DcUrlInfo();
+        info.setBusinessCode(0);
+        info.setDcUrl(dcUrl);
+        info.setStaticUrl(staticUrl);
+        info.setLastAccessTime(System.currentTimeMillis());
+        return info;
+    }
+
+    private void checkFaults(String method) throws RemoteException {
+        if (faults.apply()) {
+            throw new RemoteException("Injected failure of " + method);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.pax.market.android.app.testharness;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+/**
+ * Fake of the PAXSTORE content provider, answers the online status and location queried by StoreSdk.
+ * <p>
+ * The answers are read from the installed {@link PaxStoreStandIn}, a failed query returns a null
+ * cursor as a missing provider does.
+ */
+public class FakePaxStoreProvider extends ContentProvider {
+    public static final String AUTHORITY = "com.pax.market.android.app";
+
+    private static final String PATH_ONLINE_STATUS = "online_status";
+    private static final String PATH_LOCATION = "location";
+    private static final String[] ONLINE_STATUS_COLUMNS = {"businessCode", "message", "online"};
+    private static final String[] LOCATION_COLUMNS = {"businessCode", "message", "longitude", "latitude",
+            "accuracy", "lastLocateTime"};
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        PaxStoreStandIn standIn = PaxStoreStandIn.current();
+        if (standIn == null || standIn.getProviderFaults().apply()) {
+            return null;
+        }
+        String path = uri.getLastPathSegment();
+        if (PATH_ONLINE_STATUS.equals(path)) {
+            MatrixCursor cursor = new MatrixCursor(ONLINE_STATUS_COLUMNS, 1);
+            Boolean online = standIn.getOnline();
+            cursor.addRow(new Object[]{0, "success", online == null ? null : online.toString()});
+            return cursor;
+        }
+        if (PATH_LOCATION.equals(path)) {
+            MatrixCursor cursor = new MatrixCursor(LOCATION_COLUMNS, 1);
+            cursor.addRow(new Object[]{0, "success", standIn.getLongitude(), standIn.getLatitude(),
+                    standIn.getAccuracy(), String.valueOf(System.currentTimeMillis())});
+            return cursor;
+        }
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("PAXSTORE provider is read only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("PAXSTORE provider is read only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("PAXSTORE provider is read only");
+    }
+}
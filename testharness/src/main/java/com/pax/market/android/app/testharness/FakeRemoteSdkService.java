@@ -0,0 +1,47 @@
+package com.pax.market.android.app.testharness;
+
+import android.os.RemoteException;
+
+import com.pax.market.android.app.aidl.IRemoteSdkService;
+import com.pax.market.android.app.sdk.dto.TerminalInfo;
+
+/**
+ * Fake of the PAXSTORE remote SDK service, answers the terminal info.
+ */
+public class FakeRemoteSdkService extends IRemoteSdkService.Stub {
+    private final Faults faults = new Faults();
+    private volatile TerminalInfo terminalInfo;
+
+    public FakeRemoteSdkService() {
+        TerminalInfo info = new TerminalInfo();
+        info.setBussinessCode(0);
+        info.setTid("TID0001");
+        info.setTerminalName("Fake terminal");
+        info.setSerialNo("0820000001");
+        info.setModelName("A920");
+        info.setFactoryName("PAX");
+        info.setMerchantName("Fake merchant");
+        terminalInfo = info;
+    }
+
+    public Faults getFaults() {
+        return faults;
+    }
+
+    /**
+     * @param terminalInfo returned by getBaseTerminalInfo, null like a PAXSTORE client not activated
+     * @return this
+     */
+    public FakeRemoteSdkService setTerminalInfo(TerminalInfo terminalInfo) {
+        this.terminalInfo = terminalInfo;
+        return this;
+    }
+
+    @Override
+    public TerminalInfo getBaseTerminalInfo() throws RemoteException {
+        if (faults.apply()) {
+            throw new RemoteException("Injected failure of getBaseTerminalInfo");
+        }
+        return terminalInfo;
+    }
+}
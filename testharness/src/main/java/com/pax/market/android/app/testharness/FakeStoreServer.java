@@ -0,0 +1,537 @@
+package com.pax.market.android.app.testharness;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP stand-in of the PAXSTORE API, e.g. the param, update and sync endpoints.
+ * <p>
+ * Responses are routed by method and path prefix, the longest prefix wins. A file response honors
+ * Range requests, so an interrupted download can be resumed. Failures are injected with
+ * {@link #getFaults()} and shaped by {@link FailureMode}.
+ * <pre>
+ * FakeStoreServer server = new FakeStoreServer().start();
+ * server.route("GET", "/p-market-api/v1/3rdApps/param", FakeStoreServer.Response.json("{\"businessCode\":0,\"list\":[]}"));
+ * server.route("GET", "/download/param.zip", FakeStoreServer.Response.file(bytes));
+ * server.getFaults().setLatency(300, TimeUnit.MILLISECONDS).setFailureRate(0.1);
+ * String baseUrl = server.url("/p-market-api");
+ * </pre>
+ * Connections are closed after each response, the server is built for load tests, not for speed.
+ */
+public class FakeStoreServer implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_HEADER_LINE = 8192;
+
+    public enum FailureMode {
+        /**
+         * Answer 503 with a PAXSTORE error body
+         */
+        HTTP_ERROR,
+        /**
+         * Close the connection without answering
+         */
+        DISCONNECT,
+        /**
+         * Send the headers and half of the body, then close the connection
+         */
+        TRUNCATE
+    }
+
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<RecordedRequest> requests = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final Faults faults = new Faults();
+    private volatile FailureMode failureMode = FailureMode.HTTP_ERROR;
+    private volatile long bytesPerSecond;
+    private volatile Response defaultResponse = Response.json(404, "{\"businessCode\":404,\"message\":\"Not found\"}");
+    private ServerSocket serverSocket;
+    private volatile ExecutorService executor;
+
+    /**
+     * Listen on a free port of the loopback address.
+     *
+     * @return this
+     * @throws IOException
+     */
+    public synchronized FakeStoreServer start() throws IOException {
+        return start(0);
+    }
+
+    public synchronized FakeStoreServer start(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverSocket = new ServerSocket(port, 128, InetAddress.getByName("127.0.0.1"));
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FakeStoreServer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final ServerSocket socket = serverSocket;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(socket);
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket == null) {
+            return;
+        }
+        serverSocket.close();
+        executor.shutdownNow();
+        serverSocket = null;
+        executor = null;
+    }
+
+    public synchronized int getPort() {
+        if (serverSocket == null) {
+            throw new IllegalStateException("Server not started");
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @param path e.g. "/p-market-api"
+     * @return url of the path on this server
+     */
+    public String url(String path) {
+        return "http://127.0.0.1:" + getPort() + path;
+    }
+
+    /**
+     * @param method     HTTP method, null for any
+     * @param pathPrefix path prefix, the query string is not part of the path
+     * @param response
+     * @return this
+     */
+    public FakeStoreServer route(String method, String pathPrefix, Response response) {
+        routes.add(new Route(method, pathPrefix, response));
+        return this;
+    }
+
+    public FakeStoreServer clearRoutes() {
+        routes.clear();
+        return this;
+    }
+
+    /**
+     * @param response answered when no route matches, 404 by default
+     * @return this
+     */
+    public FakeStoreServer setDefaultResponse(Response response) {
+        defaultResponse = response;
+        return this;
+    }
+
+    public Faults getFaults() {
+        return faults;
+    }
+
+    public FakeStoreServer setFailureMode(FailureMode failureMode) {
+        this.failureMode = failureMode;
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond bandwidth of a response body, 0 for no limit
+     * @return this
+     */
+    public FakeStoreServer setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @return requests received so far
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return requests received since the last call, oldest first
+     */
+    public List<RecordedRequest> takeRequests() {
+        List<RecordedRequest> taken = new ArrayList<>();
+        RecordedRequest request;
+        while ((request = requests.poll()) != null) {
+            taken.add(request);
+        }
+        return taken;
+    }
+
+    private void acceptConnections(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            final Socket connection;
+            try {
+                connection = socket.accept();
+            } catch (IOException e) {
+                return; // closed
+            }
+            ExecutorService current = executor;
+            if (current == null) {
+                closeQuietly(connection);
+                return;
+            }
+            try {
+                current.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(connection);
+                        } catch (IOException e) {
+                            // client gone, nothing to answer
+                        } finally {
+                            closeQuietly(connection);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                closeQuietly(connection);
+                return; // closed meanwhile
+            }
+        }
+    }
+
+    private void serve(Socket connection) throws IOException {
+        InputStream in = new BufferedInputStream(connection.getInputStream());
+        RecordedRequest request = readRequest(in);
+        if (request == null) {
+            return;
+        }
+        requestCount.incrementAndGet();
+        requests.add(request);
+
+        OutputStream out = connection.getOutputStream();
+        if (faults.apply()) {
+            FailureMode mode = failureMode;
+            if (mode == FailureMode.DISCONNECT) {
+                return;
+            }
+            if (mode == FailureMode.HTTP_ERROR) {
+                write(out, Response.json(503, "{\"businessCode\":503,\"message\":\"Injected failure\"}"), request, false);
+                return;
+            }
+            write(out, findResponse(request), request, true);
+            return;
+        }
+        write(out, findResponse(request), request, false);
+    }
+
+    private Response findResponse(RecordedRequest request) {
+        Route best = null;
+        for (Route route : routes) {
+            if (route.matches(request) && (best == null || route.pathPrefix.length() > best.pathPrefix.length())) {
+                best = route;
+            }
+        }
+        return best == null ? defaultResponse : best.response;
+    }
+
+    private void write(OutputStream out, Response response, RecordedRequest request, boolean truncate) throws IOException {
+        byte[] body = response.body;
+        int status = response.status;
+        int from = 0;
+        int to = body.length;
+        Map<String, String> headers = new LinkedHashMap<>(response.headers);
+        if (response.rangeable) {
+            headers.put("Accept-Ranges", "bytes");
+            long start = parseRangeStart(request.getHeader("Range"));
+            if (start >= body.length) {
+                status = 416;
+                to = 0;
+                headers.put("Content-Range", "bytes */" + body.length);
+            } else if (start > 0) {
+                status = 206;
+                from = (int) start;
+                headers.put("Content-Range", "bytes " + from + "-" + (body.length - 1) + "/" + body.length);
+            }
+        }
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("Content-Length: ").append(to - from).append("\r\n");
+        head.append("Connection: close\r\n\r\n");
+        out.write(head.toString().getBytes(UTF_8));
+        if (!"HEAD".equals(request.getMethod())) {
+            writeBody(out, body, from, truncate ? from + (to - from) / 2 : to);
+        }
+        out.flush();
+    }
+
+    private void writeBody(OutputStream out, byte[] body, int from, int to) throws IOException {
+        long rate = bytesPerSecond;
+        if (rate <= 0) {
+            out.write(body, from, to - from);
+            return;
+        }
+        // chunks of about 50ms of bandwidth
+        int chunk = (int) Math.max(1, Math.min(64 * 1024, rate / 20));
+        long start = System.nanoTime();
+        long sent = 0;
+        for (int offset = from; offset < to; offset += chunk) {
+            int length = Math.min(chunk, to - offset);
+            out.write(body, offset, length);
+            sent += length;
+            long dueNanos = sent * 1000_000_000L / rate;
+            long aheadMillis = (dueNanos - (System.nanoTime() - start)) / 1000_000L;
+            if (aheadMillis > 0) {
+                try {
+                    Thread.sleep(aheadMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Server stopped");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return first byte of "bytes=N-", 0 if absent or not of that form
+     */
+    private static long parseRangeStart(String range) {
+        if (range == null || !range.startsWith("bytes=")) {
+            return 0;
+        }
+        int dash = range.indexOf('-');
+        if (dash < 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(range.substring("bytes=".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static RecordedRequest readRequest(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) {
+            return null;
+        }
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2) {
+            return null;
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+        byte[] body = new byte[0];
+        String contentLength = headers.get("content-length");
+        if (contentLength != null) {
+            body = new byte[Integer.parseInt(contentLength)];
+            int read = 0;
+            while (read < body.length) {
+                int count = in.read(body, read, body.length - read);
+                if (count < 0) {
+                    throw new IOException("Request body truncated");
+                }
+                read += count;
+            }
+        }
+        String target = parts[1];
+        int query = target.indexOf('?');
+        return new RecordedRequest(parts[0], query < 0 ? target : target.substring(0, query),
+                query < 0 ? null : target.substring(query + 1), headers, body);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+            if (line.size() > MAX_HEADER_LINE) {
+                throw new IOException("Header line too long");
+            }
+        }
+        if (c == -1 && line.size() == 0) {
+            return null;
+        }
+        return new String(line.toByteArray(), UTF_8);
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 206:
+                return "Partial Content";
+            case 404:
+                return "Not Found";
+            case 416:
+                return "Range Not Satisfiable";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status";
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static class Route {
+        final String method;
+        final String pathPrefix;
+        final Response response;
+
+        Route(String method, String pathPrefix, Response response) {
+            this.method = method;
+            this.pathPrefix = pathPrefix;
+            this.response = response;
+        }
+
+        boolean matches(RecordedRequest request) {
+            return (method == null || method.equalsIgnoreCase(request.getMethod())) && request.getPath().startsWith(pathPrefix);
+        }
+    }
+
+    /**
+     * Canned response, immutable so one instance can answer many requests at once.
+     */
+    public static class Response {
+        final int status;
+        final Map<String, String> headers;
+        final byte[] body;
+        final boolean rangeable;
+
+        private Response(int status, Map<String, String> headers, byte[] body, boolean rangeable) {
+            this.status = status;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+            this.rangeable = rangeable;
+        }
+
+        public static Response json(String json) {
+            return json(200, json);
+        }
+
+        public static Response json(int status, String json) {
+            Map<String, String> headers = new LinkedHashMap<>();
+            headers.put("Content-Type", "application/json;charset=UTF-8");
+            return new Response(status, headers, json.getBytes(UTF_8), false);
+        }
+
+        /**
+         * @param content file content, served in part for a Range request
+         * @return response of a downloadable file
+         */
+        public static Response file(byte[] content) {
+            Map<String, String> headers = new LinkedHashMap<>();
+            headers.put("Content-Type", "application/octet-stream");
+            return new Response(200, headers, content.clone(), true);
+        }
+
+        /**
+         * @return copy of this response with one more header
+         */
+        public Response withHeader(String name, String value) {
+            Map<String, String> copy = new LinkedHashMap<>(headers);
+            copy.put(name, value);
+            return new Response(status, copy, body, rangeable);
+        }
+    }
+
+    /**
+     * Request received by the server.
+     */
+    public static class RecordedRequest {
+        private final String method;
+        private final String path;
+        private final String query;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        RecordedRequest(String method, String path, String query, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return query string without '?', null if none
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @param name case insensitive
+         * @return value of the header, null if absent
+         */
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+
+        public byte[] getBody() {
+            return body.clone();
+        }
+
+        public String getBodyAsString() {
+            return new String(body, UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return method + " " + path + (query == null ? "" : "?" + query);
+        }
+    }
+}
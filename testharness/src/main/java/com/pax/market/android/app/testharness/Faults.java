@@ -0,0 +1,135 @@
+package com.pax.market.android.app.testharness;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency and failures injected into a fake, e.g. every call takes 200ms and one in ten fails.
+ * <p>
+ * Setters can be called while the fake is in use, the next call sees the new values.
+ */
+public class Faults {
+    private final Random random;
+    private final AtomicInteger failNext = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double failureRate;
+
+    public Faults() {
+        this(42L);
+    }
+
+    /**
+     * @param seed seed of the jitter and failure draws, same seed same sequence on a single thread
+     */
+    public Faults(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * @param latency delay of every call
+     * @param unit
+     * @return this
+     */
+    public Faults setLatency(long latency, TimeUnit unit) {
+        latencyMillis = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * @param jitter random delay up to jitter added to the latency
+     * @param unit
+     * @return this
+     */
+    public Faults setJitter(long jitter, TimeUnit unit) {
+        jitterMillis = unit.toMillis(jitter);
+        return this;
+    }
+
+    /**
+     * @param failureRate share of the calls failing, from 0 to 1
+     * @return this
+     */
+    public Faults setFailureRate(double failureRate) {
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("failureRate must be between 0 and 1");
+        }
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @param count next calls failing whatever the failure rate
+     * @return this
+     */
+    public Faults failNext(int count) {
+        failNext.set(count);
+        return this;
+    }
+
+    /**
+     * No latency and no failure any more, the counts are kept.
+     */
+    public Faults reset() {
+        latencyMillis = 0;
+        jitterMillis = 0;
+        failureRate = 0;
+        failNext.set(0);
+        return this;
+    }
+
+    /**
+     * Wait the latency of a call and draw its failure, called by the fakes.
+     *
+     * @return true if the call should fail
+     */
+    public boolean apply() {
+        calls.incrementAndGet();
+        long delay = latencyMillis;
+        long jitter = jitterMillis;
+        if (jitter > 0) {
+            delay += (long) (random.nextDouble() * jitter);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.incrementAndGet();
+                return true;
+            }
+        }
+        boolean fail = decrementFailNext() || (failureRate > 0 && random.nextDouble() < failureRate);
+        if (fail) {
+            failures.incrementAndGet();
+        }
+        return fail;
+    }
+
+    private boolean decrementFailNext() {
+        int current;
+        while ((current = failNext.get()) > 0) {
+            if (failNext.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return calls seen so far
+     */
+    public int getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return calls failed so far
+     */
+    public int getFailures() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,160 @@
+package com.pax.market.android.app.testharness;
+
+import android.app.Application;
+import android.content.ComponentName;
+import android.content.Intent;
+
+import com.pax.market.android.app.sdk.BaseApiService;
+
+import org.robolectric.Robolectric;
+import org.robolectric.Shadows;
+
+import java.io.IOException;
+
+/**
+ * PAXSTORE client stand-in for Robolectric tests and load tests of the SDK off device.
+ * <p>
+ * It binds {@link FakeApiUrlService} and {@link FakeRemoteSdkService} to the intents the SDK
+ * binds, registers {@link FakePaxStoreProvider} and starts a {@link FakeStoreServer} the fake
+ * services point the SDK to.
+ * <pre>
+ * PaxStoreStandIn standIn = PaxStoreStandIn.install(RuntimeEnvironment.application);
+ * standIn.getServer().route("GET", "/p-market-api/v1/3rdApps/param", FakeStoreServer.Response.json(json));
+ * standIn.getApiUrlService().getFaults().setLatency(500, TimeUnit.MILLISECONDS);
+ * StoreSdk.getInstance().init(RuntimeEnvironment.application, appKey, appSecret, callback);
+ * ...
+ * standIn.uninstall();
+ * </pre>
+ * Robolectric delivers onServiceConnected on the main looper, idle it for the SDK to get bound.
+ * Only one stand-in is installed at a time.
+ */
+public class PaxStoreStandIn {
+    /**
+     * Same as BaseApiService, kept here as the SDK one is private
+     */
+    private static final String REMOTE_SDK_ACTION = "com.pax.market.android.app.aidl.REMOTE_SDK_SERVICE";
+    /**
+     * Reported to onServiceConnected only, the SDK binds by action and package
+     */
+    private static final String API_URL_SERVICE_CLASS = "com.pax.market.android.app.service.ApiUrlService";
+    private static final String REMOTE_SDK_SERVICE_CLASS = "com.pax.market.android.app.service.RemoteSdkService";
+    private static final String API_PATH = "/p-market-api";
+
+    private static volatile PaxStoreStandIn current;
+
+    private final FakeApiUrlService apiUrlService = new FakeApiUrlService();
+    private final FakeRemoteSdkService remoteSdkService = new FakeRemoteSdkService();
+    private final FakeStoreServer server = new FakeStoreServer();
+    private final Faults providerFaults = new Faults();
+    private volatile Boolean online = Boolean.TRUE;
+    private volatile String longitude = "113.9";
+    private volatile String latitude = "22.5";
+    private volatile String accuracy = "20.0";
+
+    private PaxStoreStandIn() {
+    }
+
+    /**
+     * Start the stand-in and bind it in the Robolectric application.
+     *
+     * @param application Robolectric application
+     * @return the stand-in, its fakes point to the started server
+     * @throws IOException if the server can not listen
+     */
+    public static synchronized PaxStoreStandIn install(Application application) throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("A PAXSTORE stand-in is already installed");
+        }
+        PaxStoreStandIn standIn = new PaxStoreStandIn();
+        standIn.server.start();
+        String apiUrl = standIn.server.url(API_PATH);
+        standIn.apiUrlService.setApiUrl(apiUrl).setDcUrls(apiUrl);
+
+        Intent apiUrlIntent = new Intent(BaseApiService.INIT_ACTION);
+        apiUrlIntent.setPackage(BaseApiService.PAXSTORE_PACKAGE_NAME);
+        Shadows.shadowOf(application).setComponentNameAndServiceForBindServiceForIntent(apiUrlIntent,
+                new ComponentName(BaseApiService.PAXSTORE_PACKAGE_NAME, API_URL_SERVICE_CLASS), standIn.apiUrlService);
+        Intent remoteSdkIntent = new Intent(REMOTE_SDK_ACTION);
+        remoteSdkIntent.setPackage(BaseApiService.PAXSTORE_PACKAGE_NAME);
+        Shadows.shadowOf(application).setComponentNameAndServiceForBindServiceForIntent(remoteSdkIntent,
+                new ComponentName(BaseApiService.PAXSTORE_PACKAGE_NAME, REMOTE_SDK_SERVICE_CLASS), standIn.remoteSdkService);
+        Robolectric.setupContentProvider(FakePaxStoreProvider.class, FakePaxStoreProvider.AUTHORITY);
+
+        current = standIn;
+        return standIn;
+    }
+
+    /**
+     * @return the installed stand-in, null if none
+     */
+    public static PaxStoreStandIn current() {
+        return current;
+    }
+
+    /**
+     * Stop the server, the provider answers null cursors afterwards.
+     */
+    public void uninstall() {
+        synchronized (PaxStoreStandIn.class) {
+            if (current == this) {
+                current = null;
+            }
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    public FakeApiUrlService getApiUrlService() {
+        return apiUrlService;
+    }
+
+    public FakeRemoteSdkService getRemoteSdkService() {
+        return remoteSdkService;
+    }
+
+    public FakeStoreServer getServer() {
+        return server;
+    }
+
+    /**
+     * @return faults of the content provider queries, a failed query returns a null cursor
+     */
+    public Faults getProviderFaults() {
+        return providerFaults;
+    }
+
+    /**
+     * @param online online status answered by the provider, null if unknown
+     * @return this
+     */
+    public PaxStoreStandIn setOnline(Boolean online) {
+        this.online = online;
+        return this;
+    }
+
+    public PaxStoreStandIn setLocation(String longitude, String latitude, String accuracy) {
+        this.longitude = longitude;
+        this.latitude = latitude;
+        this.accuracy = accuracy;
+        return this;
+    }
+
+    Boolean getOnline() {
+        return online;
+    }
+
+    String getLongitude() {
+        return longitude;
+    }
+
+    String getLatitude() {
+        return latitude;
+    }
+
+    String getAccuracy() {
+        return accuracy;
+    }
+}